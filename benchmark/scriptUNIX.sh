@@ -13,6 +13,6 @@ javac -d ./../bin/ ./../src/edu/emn/tsp/*.java -cp ./../lib/visuBeta.jar
 for i in ./../instances/*.tsp;do
 	sleep 1;
 	echo "Executing instance ".$i
-	java -cp "./../bin/:./../lib/visuBeta.jar" -Djava.library.path=./../lib/ edu.emn.tsp.Main -t 60 $i >> standardOutput.txt 2>> errorOutput.txt
+	java -cp "./../bin/:./../lib/visuBeta.jar" -Djava.library.path=./../lib/ edu.emn.tsp.Main -cache -t 60 $i >> standardOutput.txt 2>> errorOutput.txt
 done
 
@@ -0,0 +1,104 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+/**
+ * {@link Tour} stored as the array of the vertices in tour order and the
+ * position of each vertex. <br>
+ * <br>
+ * A flip reverses the shorter of the two paths, so it moves at most n/2
+ * vertices. This is the fastest representation up to a few thousand
+ * vertices.
+ */
+class ArrayTour implements Tour {
+
+	/** Vertices in tour order. */
+	private final int[] m_order;
+
+	/** Position of each vertex in m_order. */
+	private final int[] m_pos;
+
+	/**
+	 * @param route
+	 *            vertices in tour order (only the first n are read).
+	 * @param n
+	 *            number of vertices.
+	 */
+	ArrayTour(int[] route, int n) {
+		m_order = new int[n];
+		m_pos = new int[n];
+		for (int i = 0; i < n; i++) {
+			m_order[i] = route[i];
+			m_pos[route[i]] = i;
+		}
+	}
+
+	@Override
+	public int size() {
+		return m_order.length;
+	}
+
+	@Override
+	public int next(int v) {
+		int p = m_pos[v] + 1;
+		return m_order[p == m_order.length ? 0 : p];
+	}
+
+	@Override
+	public int prev(int v) {
+		int p = m_pos[v];
+		return m_order[p == 0 ? m_order.length - 1 : p - 1];
+	}
+
+	@Override
+	public boolean between(int a, int b, int c) {
+		int pa = m_pos[a], pb = m_pos[b], pc = m_pos[c];
+		if (pa <= pc)
+			return pa <= pb && pb <= pc;
+		return pb >= pa || pb <= pc;
+	}
+
+	@Override
+	public void flip(int a, int b, int c, int d) {
+		int n = m_order.length;
+		int first = m_pos[b], last = m_pos[c];
+		int length = last - first;
+		if (length < 0)
+			length += n;
+		if (2 * (length + 1) > n) {
+			// The path from d to a is shorter
+			first = m_pos[d];
+			last = m_pos[a];
+			length = n - 2 - length;
+		}
+		for (int k = (length + 1) / 2; k > 0; k--) {
+			int u = m_order[first], v = m_order[last];
+			m_order[first] = v;
+			m_pos[v] = first;
+			m_order[last] = u;
+			m_pos[u] = last;
+			if (++first == n)
+				first = 0;
+			if (--last < 0)
+				last = n - 1;
+		}
+	}
+
+}
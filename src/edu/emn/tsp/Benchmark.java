@@ -0,0 +1,361 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Small benchmarks of the framework internals. They are run from the command
+ * line, the results are printed on the standard output, one line per
+ * measure, fields separated by semicolons.
+ * 
+ * **command**: java Benchmark benchmark dataFile [dataFile ...]
+ * 
+ * **Benchmarks**:
+ *  - storage : loads the instance with each distance storage and times the
+ * 2-opt descent ({@link Solution#deux_opt()} until no improvement) from the
+ * nearest neighbor tour starting at vertex 0. Output:
+ * fileName;storage;loadTime;2optTime;objective
+ *  - load : loads the instance with the default storage. Output:
+ * fileName;storage;parseTime;distanceTime
+ *  - kernel : times the evaluation of random 2-opt moves on the nearest
+ * neighbor tour, through the checked accessors ({@link Solution#getSolution(int)}
+ * and {@link Instance#getDistances(int, int)}) and through the unchecked ones
+ * ({@link Solution#getTour()} and {@link Instance#getDistanceMatrix()}).
+ * Output: fileName;api;nanosecondsPerMove
+ *  - tour : times random flips on the nearest neighbor tour with an
+ * {@link ArrayTour} and with a {@link TwoLevelTour}. Output:
+ * fileName;representation;nanosecondsPerFlip
+ *  - twoopt : times the 2-opt descent from the nearest neighbor tour starting
+ * at vertex 0, with the full scan ({@link Solution#deux_opt()} until no
+ * improvement, only below {@link #FULL_SCAN_MAX_VERTICES} vertices) and with
+ * the neighbor lists ({@link Solution#deux_optVoisins()}), then the 3-opt
+ * descent with the neighbor lists ({@link Solution#trois_optVoisins()}) and
+ * the Lin-Kernighan descent ({@link Solution#linKernighan()}). Output:
+ * fileName;variant;time;objective
+ *  - parallel : times the parallel best improvement 2-opt descent
+ * ({@link Solution#deux_optParallele(ForkJoinPool)}) from the nearest
+ * neighbor tour starting at vertex 0, on pools of 1, 2, 4, 8 and 16 threads.
+ * The speedup is relative to 1 thread. Output:
+ * fileName;threads;time;speedup;objective
+ *  - start : times each construction of {@link TSPSolver.Start}, through
+ * {@link TSPSolver#construct(int)} for the first tour of a multi-start. Each
+ * construction is run twice and the second run is timed. The ratio is the
+ * length of the tour divided by the length of the nearest neighbor tour
+ * ({@link Solution#plusprochevoisin(int)} from vertex 0). Output:
+ * fileName;start;time;objective;ratio
+ */
+public class Benchmark {
+
+	/**
+	 * @param arg
+	 *            benchmark name followed by the instance files.
+	 */
+	public static void main(String[] arg) {
+		if (arg.length < 2) {
+			System.err.println("command: java Benchmark benchmark dataFile [dataFile ...]");
+			System.err.println("Benchmarks: storage, load, kernel, tour, twoopt, parallel, start");
+			return;
+		}
+		try {
+			for (int i = 1; i < arg.length; i++) {
+				if (arg[0].compareTo("storage") == 0) {
+					storage(arg[i]);
+				} else if (arg[0].compareTo("load") == 0) {
+					load(arg[i]);
+				} else if (arg[0].compareTo("kernel") == 0) {
+					kernel(arg[i]);
+				} else if (arg[0].compareTo("tour") == 0) {
+					tour(arg[i]);
+				} else if (arg[0].compareTo("twoopt") == 0) {
+					twoOpt(arg[i]);
+				} else if (arg[0].compareTo("parallel") == 0) {
+					parallel(arg[i]);
+				} else if (arg[0].compareTo("start") == 0) {
+					start(arg[i]);
+				} else {
+					System.err.println("Error: unknown benchmark " + arg[0]);
+					System.exit(1);
+				}
+			}
+		} catch (Exception e) {
+			System.err.printf("Error: %s", e.getMessage());
+			System.err.println();
+			e.printStackTrace(System.err);
+			System.exit(1);
+		}
+	}
+
+	/** Times the parsing and the distance matrix construction. */
+	private static void load(String fileName) throws Exception {
+		Instance inst = new Instance(fileName);
+		System.out.println(fileName + ";" + inst.getDistanceStorage() + ";"
+				+ inst.getParseTime() + ";" + inst.getDistanceTime());
+	}
+
+	/**
+	 * Compares the full <code>long[][]</code> matrix with the packed triangle
+	 * on the 2-opt descent.
+	 */
+	private static void storage(String fileName) throws Exception {
+		Instance.DistanceStorage[] storages = new Instance.DistanceStorage[] {
+				Instance.DistanceStorage.FULL, Instance.DistanceStorage.PACKED };
+		for (Instance.DistanceStorage storage : storages) {
+			long t = System.currentTimeMillis();
+			Instance inst = new Instance(fileName, storage);
+			long load = System.currentTimeMillis() - t;
+
+			Solution sol = new Solution(inst);
+			sol.plusprochevoisin(0);
+			double avant, apres = sol.evaluate();
+			t = System.currentTimeMillis();
+			do {
+				avant = apres;
+				sol.deux_opt();
+				apres = sol.evaluate();
+			} while (avant > apres);
+			t = System.currentTimeMillis() - t;
+			System.out.println(fileName + ";" + storage + ";" + load + ";" + t
+					+ ";" + sol.getObjective());
+		}
+	}
+
+	/** Number of 2-opt moves evaluated per round of the kernel benchmark. */
+	private static final int KERNEL_MOVES = 1 << 20;
+
+	/** Number of rounds of the kernel benchmark, the first half is warm-up. */
+	private static final int KERNEL_ROUNDS = 10;
+
+	/**
+	 * Compares the checked and the unchecked accessors on the evaluation of
+	 * 2-opt moves. The same random moves are evaluated by both versions, the
+	 * sums of the gains are compared to make sure that no work is optimized
+	 * away.
+	 */
+	private static void kernel(String fileName) throws Exception {
+		Instance inst = new Instance(fileName);
+		int n = inst.getNbVertices();
+		Solution sol = new Solution(inst);
+		sol.plusprochevoisin(0);
+
+		java.util.Random random = new java.util.Random(0);
+		int[] moves = new int[2 * KERNEL_MOVES];
+		for (int m = 0; m < KERNEL_MOVES; m++) {
+			int i = random.nextInt(n - 2);
+			moves[2 * m] = i;
+			moves[2 * m + 1] = i + 2 + random.nextInt(n - 2 - i);
+		}
+
+		long checked = 0, unchecked = 0;
+		long checkedTime = 0, uncheckedTime = 0;
+		for (int round = 0; round < KERNEL_ROUNDS; round++) {
+			long t = System.nanoTime();
+			checked = kernelChecked(sol, inst, moves);
+			t = System.nanoTime() - t;
+			if (round >= KERNEL_ROUNDS / 2)
+				checkedTime += t;
+
+			t = System.nanoTime();
+			unchecked = kernelUnchecked(sol.getTour(),
+					inst.getDistanceMatrix(), moves);
+			t = System.nanoTime() - t;
+			if (round >= KERNEL_ROUNDS / 2)
+				uncheckedTime += t;
+		}
+		if (checked != unchecked)
+			throw new Exception("Error : the checked and unchecked gains differ ("
+					+ checked + " and " + unchecked + ").");
+
+		double moveCount = (double) KERNEL_MOVES
+				* (KERNEL_ROUNDS - KERNEL_ROUNDS / 2);
+		System.out.println(fileName + ";checked;" + checkedTime / moveCount);
+		System.out.println(fileName + ";unchecked;" + uncheckedTime / moveCount);
+	}
+
+	/** Sums the gains of the moves with the checked accessors. */
+	private static long kernelChecked(Solution sol, Instance inst, int[] moves)
+			throws Exception {
+		long sum = 0;
+		for (int m = 0; m < moves.length; m += 2) {
+			int a = sol.getSolution(moves[m]);
+			int b = sol.getSolution(moves[m] + 1);
+			int c = sol.getSolution(moves[m + 1]);
+			int d = sol.getSolution(moves[m + 1] + 1);
+			sum += inst.getDistances(a, b) + inst.getDistances(c, d)
+					- inst.getDistances(a, c) - inst.getDistances(b, d);
+		}
+		return sum;
+	}
+
+	/** Sums the gains of the moves with the unchecked accessors. */
+	private static long kernelUnchecked(int[] tour, DistanceMatrix distances,
+			int[] moves) {
+		long sum = 0;
+		for (int m = 0; m < moves.length; m += 2) {
+			int a = tour[moves[m]];
+			int b = tour[moves[m] + 1];
+			int c = tour[moves[m + 1]];
+			int d = tour[moves[m + 1] + 1];
+			sum += distances.get(a, b) + distances.get(c, d)
+					- distances.get(a, c) - distances.get(b, d);
+		}
+		return sum;
+	}
+
+	/** Number of flips per round of the tour benchmark. */
+	private static final int TOUR_FLIPS = 1 << 16;
+
+	/**
+	 * Compares the tour representations on random flips. The same flips are
+	 * applied to both tours, the first half of the rounds is warm-up.
+	 */
+	private static void tour(String fileName) throws Exception {
+		Instance inst = new Instance(fileName);
+		int n = inst.getNbVertices();
+		Solution sol = new Solution(inst);
+		sol.plusprochevoisin(0);
+
+		java.util.Random random = new java.util.Random(0);
+		int[] flips = new int[2 * TOUR_FLIPS];
+		for (int m = 0; m < flips.length; m++) {
+			flips[m] = random.nextInt(n);
+		}
+		for (boolean twoLevel : new boolean[] { false, true }) {
+			Tour tour = sol.createTour(twoLevel);
+			long time = 0;
+			for (int round = 0; round < KERNEL_ROUNDS; round++) {
+				long t = System.nanoTime();
+				for (int m = 0; m < flips.length; m += 2) {
+					int a = flips[m], c = flips[m + 1];
+					tour.flip(a, tour.next(a), c, tour.next(c));
+				}
+				t = System.nanoTime() - t;
+				if (round >= KERNEL_ROUNDS / 2)
+					time += t;
+			}
+			double flipCount = (double) TOUR_FLIPS
+					* (KERNEL_ROUNDS - KERNEL_ROUNDS / 2);
+			System.out.println(fileName + ";"
+					+ (twoLevel ? "twoLevel" : "array") + ";" + time
+					/ flipCount);
+		}
+	}
+
+	/** Largest instance on which the full scan 2-opt is timed. */
+	private static final int FULL_SCAN_MAX_VERTICES = 20000;
+
+	/** Compares the full scan and the neighbor list 2-opt descents. */
+	private static void twoOpt(String fileName) throws Exception {
+		Instance inst = new Instance(fileName);
+		Solution sol = new Solution(inst);
+		if (inst.getNbVertices() <= FULL_SCAN_MAX_VERTICES) {
+			sol.plusprochevoisin(0);
+			sol.evaluate();
+			long t = System.currentTimeMillis();
+			while (sol.deux_opt()) {
+			}
+			t = System.currentTimeMillis() - t;
+			System.out.println(fileName + ";fullScan;" + t + ";"
+					+ sol.getObjective());
+		}
+
+		sol.plusprochevoisin(0);
+		sol.evaluate();
+		long t = System.currentTimeMillis();
+		sol.deux_optVoisins();
+		t = System.currentTimeMillis() - t;
+		System.out.println(fileName + ";neighborLists;" + t + ";"
+				+ sol.getObjective());
+
+		sol.plusprochevoisin(0);
+		sol.evaluate();
+		t = System.currentTimeMillis();
+		sol.trois_optVoisins();
+		t = System.currentTimeMillis() - t;
+		System.out.println(fileName + ";threeOptNeighborLists;" + t + ";"
+				+ sol.getObjective());
+
+		sol.plusprochevoisin(0);
+		sol.evaluate();
+		t = System.currentTimeMillis();
+		sol.linKernighan();
+		t = System.currentTimeMillis() - t;
+		System.out.println(fileName + ";linKernighan;" + t + ";"
+				+ sol.getObjective());
+	}
+
+	/** Thread counts of the parallel benchmark. */
+	private static final int[] THREADS = { 1, 2, 4, 8, 16 };
+
+	/**
+	 * Times the parallel 2-opt descent with each number of threads, after a
+	 * first run that is not printed, for the warm-up. The descent is
+	 * deterministic, so every run must reach the same objective.
+	 */
+	private static void parallel(String fileName) throws Exception {
+		Instance inst = new Instance(fileName);
+		Solution sol = new Solution(inst);
+		sol.plusprochevoisin(0);
+		sol.evaluate();
+		sol.deux_optParallele();
+		long reference = 0;
+		for (int threads : THREADS) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				sol.plusprochevoisin(0);
+				sol.evaluate();
+				long t = System.currentTimeMillis();
+				sol.deux_optParallele(pool);
+				t = System.currentTimeMillis() - t;
+				if (threads == 1)
+					reference = t;
+				System.out.printf("%s;%d;%d;%.2f;%d%n", fileName, threads, t,
+						(double) reference / Math.max(1, t), sol.getObjective());
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+	/** Compares the constructions of the starting tours. */
+	private static void start(String fileName) throws Exception {
+		Instance inst = new Instance(fileName);
+		Solution sol = new Solution(inst);
+		TSPSolver tsp = new TSPSolver();
+		tsp.setInstance(inst);
+		tsp.setSolution(sol);
+		long reference = 0;
+		for (TSPSolver.Start start : TSPSolver.Start.values()) {
+			tsp.setStart(start);
+			tsp.construct(0);
+			long t = System.currentTimeMillis();
+			tsp.construct(0);
+			t = System.currentTimeMillis() - t;
+			sol.evaluate();
+			long objective = sol.getObjective();
+			if (start == TSPSolver.Start.NEAREST)
+				reference = objective;
+			System.out.printf("%s;%s;%d;%d;%.3f%n", fileName,
+					start.name().toLowerCase(), t, objective,
+					(double) objective / reference);
+		}
+	}
+
+}
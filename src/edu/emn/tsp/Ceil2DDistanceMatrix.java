@@ -0,0 +1,52 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+/**
+ * Euclidean distances rounded up to the next integer (TSPLib edge weight type
+ * CEIL_2D), computed on demand from the vertex coordinates.
+ */
+class Ceil2DDistanceMatrix implements DistanceMatrix {
+
+	/** x coordinates for each customer */
+	private final double[] m_x;
+
+	/** y coordinates for each customer */
+	private final double[] m_y;
+
+	/**
+	 * @param x
+	 *            x coordinates for each customer.
+	 * @param y
+	 *            y coordinates for each customer.
+	 */
+	Ceil2DDistanceMatrix(double[] x, double[] y) {
+		m_x = x;
+		m_y = y;
+	}
+
+	@Override
+	public long get(int i, int j) {
+		double dx = m_x[i] - m_x[j];
+		double dy = m_y[i] - m_y[j];
+		return (long) Math.ceil(Math.sqrt(dx * dx + dy * dy));
+	}
+
+}
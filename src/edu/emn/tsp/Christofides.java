@@ -0,0 +1,211 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+import java.util.Arrays;
+
+/**
+ * Christofides construction, with a greedy matching: the vertices of odd
+ * degree in the minimum spanning tree ({@link SpanningTree}) are matched,
+ * the edges of the tree and of the matching form a graph whose vertices all
+ * have an even degree, and the tour follows an Eulerian circuit of this graph
+ * and skips the vertices already visited. <br>
+ * <br>
+ * The perfect matching of minimum weight, which gives the 3/2 guarantee, is
+ * replaced by a greedy matching, built in rounds: each unmatched odd vertex
+ * searches the nearest other unmatched odd vertex, and these pairs are
+ * matched by increasing distance when both vertices are still free. For the
+ * Euclidean instances, the nearest vertex is searched in a {@link KdTree}
+ * that only holds the unmatched odd vertices, otherwise among all of them.
+ * The circuit is built by Hierholzer's algorithm, in O(n).
+ */
+class Christofides {
+
+	/** Number of vertices. */
+	private final int m_n;
+
+	/** Ends of the edges of the graph: edge e joins m_u[e] and m_v[e]. */
+	private final int[] m_u, m_v;
+
+	/** Number of edges. */
+	private int m_nbEdges;
+
+	/**
+	 * Builds the graph made of the tree and of the matching.
+	 *
+	 * @param inst
+	 *            problem data.
+	 * @param tree
+	 *            minimum spanning tree of the instance.
+	 */
+	Christofides(Instance inst, SpanningTree tree) {
+		int n = inst.getNbVertices();
+		m_n = n;
+		// n-1 tree edges and at most n/2 matching edges
+		m_u = new int[n + n / 2];
+		m_v = new int[n + n / 2];
+		int[] degree = new int[n];
+		for (int v = 0; v < n; v++) {
+			int p = tree.getParent(v);
+			if (p >= 0) {
+				addEdge(v, p);
+				degree[v]++;
+				degree[p]++;
+			}
+		}
+		int nbOdd = 0;
+		int[] odd = new int[n];
+		for (int v = 0; v < n; v++) {
+			if (degree[v] % 2 == 1)
+				odd[nbOdd++] = v;
+		}
+		match(inst, odd, nbOdd);
+	}
+
+	private void addEdge(int u, int v) {
+		m_u[m_nbEdges] = u;
+		m_v[m_nbEdges] = v;
+		m_nbEdges++;
+	}
+
+	/** Adds a greedy matching of the vertices odd[0..nbOdd) to the graph. */
+	private void match(Instance inst, int[] odd, int nbOdd) {
+		DistanceMatrix distances = inst.getDistanceMatrix();
+		KdTree free = null;
+		if (inst.isEuclideanOrder()) {
+			free = new KdTree(inst.getXs(), inst.getYs());
+			boolean[] isOdd = new boolean[m_n];
+			for (int i = 0; i < nbOdd; i++) {
+				isOdd[odd[i]] = true;
+			}
+			for (int v = 0; v < m_n; v++) {
+				if (!isOdd[v])
+					free.remove(v);
+			}
+		}
+		double scale = inst.getEuclideanScale();
+		boolean[] matched = new boolean[m_n];
+		int[] target = new int[nbOdd];
+		long[] keys = new long[nbOdd];
+
+		while (nbOdd > 0) {
+			// Nearest free odd vertex of each free odd vertex
+			for (int i = 0; i < nbOdd; i++) {
+				int u = odd[i], v = -1;
+				if (free != null) {
+					free.remove(u);
+					v = free.nearestRemaining(u, distances, scale);
+					free.restore(u);
+				} else {
+					long best = Long.MAX_VALUE;
+					for (int j = 0; j < nbOdd; j++) {
+						int w = odd[j];
+						if (w == u)
+							continue;
+						long d = distances.get(u, w);
+						if (d < best) {
+							best = d;
+							v = w;
+						}
+					}
+				}
+				target[i] = v;
+				long d = Math.min(distances.get(u, v), Integer.MAX_VALUE);
+				keys[i] = (d << 32) | i;
+			}
+			Arrays.sort(keys, 0, nbOdd);
+			for (int k = 0; k < nbOdd; k++) {
+				int i = (int) keys[k];
+				int u = odd[i], v = target[i];
+				if (matched[u] || matched[v])
+					continue;
+				matched[u] = true;
+				matched[v] = true;
+				addEdge(u, v);
+				if (free != null) {
+					free.remove(u);
+					free.remove(v);
+				}
+			}
+			// The odd vertices left
+			int left = 0;
+			for (int i = 0; i < nbOdd; i++) {
+				if (!matched[odd[i]])
+					odd[left++] = odd[i];
+			}
+			nbOdd = left;
+		}
+	}
+
+	/**
+	 * Writes in <code>route</code>, of size n+1, the vertices in the order of
+	 * their first visit by an Eulerian circuit from <code>first</code>.
+	 */
+	void toRoute(int first, int[] route) {
+		int n = m_n;
+		// Edges around each vertex
+		int[] start = new int[n + 1];
+		int[] incident = new int[2 * m_nbEdges];
+		for (int e = 0; e < m_nbEdges; e++) {
+			start[m_u[e] + 1]++;
+			start[m_v[e] + 1]++;
+		}
+		for (int v = 0; v < n; v++) {
+			start[v + 1] += start[v];
+		}
+		int[] next = Arrays.copyOf(start, n);
+		for (int e = 0; e < m_nbEdges; e++) {
+			incident[next[m_u[e]]++] = e;
+			incident[next[m_v[e]]++] = e;
+		}
+
+		// Hierholzer: next[v] is the next edge of v to look at. The vertices
+		// leave the stack in the reverse order of the circuit, which is also
+		// an Eulerian circuit
+		System.arraycopy(start, 0, next, 0, n);
+		boolean[] used = new boolean[m_nbEdges];
+		boolean[] visited = new boolean[n];
+		int[] stack = new int[m_nbEdges + 1];
+		int top = 0;
+		stack[top++] = first;
+		int count = 0;
+		while (top > 0) {
+			int v = stack[top - 1];
+			while (next[v] < start[v + 1] && used[incident[next[v]]]) {
+				next[v]++;
+			}
+			if (next[v] < start[v + 1]) {
+				int e = incident[next[v]++];
+				used[e] = true;
+				stack[top++] = m_u[e] == v ? m_v[e] : m_u[e];
+			} else {
+				top--;
+				if (!visited[v]) {
+					visited[v] = true;
+					route[count++] = v;
+				}
+			}
+		}
+		// The walk from first can only get stuck at first, which is thus the
+		// first vertex to leave the stack
+		route[n] = first;
+	}
+
+}
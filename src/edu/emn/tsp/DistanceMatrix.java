@@ -0,0 +1,56 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+/**
+ * Access to the distances between the vertices of an {@link Instance}. <br>
+ * <br>
+ * Implementations either store the distances computed when the instance is
+ * loaded or compute them on demand from the vertex coordinates. The storage is
+ * chosen once, when the instance is read, so that callers always go through
+ * this single lookup method. No range checking is performed: callers are
+ * expected to pass valid vertex numbers.
+ */
+public interface DistanceMatrix {
+
+	/**
+	 * @param i
+	 *            origin vertex (between 0 and nbVertex-1).
+	 * @param j
+	 *            destination vertex (between 0 and nbVertex-1).
+	 * @return the distance from i to j.
+	 */
+	long get(int i, int j);
+
+	/**
+	 * Copies the distances from i to every vertex into <code>row</code>.
+	 * 
+	 * @param i
+	 *            origin vertex.
+	 * @param row
+	 *            array of size nbVertex that receives the distances.
+	 */
+	default void getRow(int i, long[] row) {
+		for (int j = 0; j < row.length; j++) {
+			row[j] = get(i, j);
+		}
+	}
+
+}
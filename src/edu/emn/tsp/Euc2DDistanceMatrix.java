@@ -0,0 +1,150 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+/**
+ * Euclidean distances rounded to the nearest integer, computed on demand from
+ * the vertex coordinates. Nothing is stored apart from the coordinates, so
+ * this allows to load instances whose distance matrix does not fit in memory.
+ * <br>
+ * <br>
+ * Use {@link #create(double[], double[])}, which selects the cheapest exact
+ * computation for the coordinates.
+ */
+class Euc2DDistanceMatrix implements DistanceMatrix {
+
+	/**
+	 * Bound on the coordinates under which a plain square root gives the same
+	 * rounded distances as {@link Math#hypot(double, double)} (see
+	 * {@link Integral}).
+	 */
+	private static final double INTEGRAL_BOUND = 1 << 22;
+
+	/**
+	 * Bound on the coordinates under which {@link Bounded} can be used.
+	 */
+	private static final double BOUNDED_BOUND = 1 << 28;
+
+	/** x coordinates for each customer */
+	protected final double[] m_x;
+
+	/** y coordinates for each customer */
+	protected final double[] m_y;
+
+	/**
+	 * @param x
+	 *            x coordinates for each customer.
+	 * @param y
+	 *            y coordinates for each customer.
+	 */
+	Euc2DDistanceMatrix(double[] x, double[] y) {
+		m_x = x;
+		m_y = y;
+	}
+
+	@Override
+	public long get(int i, int j) {
+		double dx = m_x[i] - m_x[j];
+		double dy = m_y[i] - m_y[j];
+		return (long) Math.rint(Math.hypot(dx, dy));
+	}
+
+	/**
+	 * @return the on-the-fly distances for these coordinates: an
+	 *         {@link Integral} object if all the coordinates are integers of
+	 *         absolute value below 2^22, a {@link Bounded} object if they are
+	 *         below 2^28, otherwise an object based on
+	 *         {@link Math#hypot(double, double)}.
+	 */
+	static Euc2DDistanceMatrix create(double[] x, double[] y) {
+		boolean integral = true;
+		for (int i = 0; i < x.length; i++) {
+			if (Math.abs(x[i]) >= BOUNDED_BOUND
+					|| Math.abs(y[i]) >= BOUNDED_BOUND)
+				return new Euc2DDistanceMatrix(x, y);
+			integral &= isSmallInteger(x[i]) && isSmallInteger(y[i]);
+		}
+		return integral ? new Integral(x, y) : new Bounded(x, y);
+	}
+
+	private static boolean isSmallInteger(double v) {
+		return v == Math.rint(v) && Math.abs(v) < INTEGRAL_BOUND;
+	}
+
+	/**
+	 * Distances between integer coordinates, computed with
+	 * <code>Math.sqrt(dx*dx + dy*dy)</code> which is several times faster than
+	 * {@link Math#hypot(double, double)}. <br>
+	 * <br>
+	 * The rounded result is exactly the same: dx and dy are integers below
+	 * 2^23, so s = dx*dx + dy*dy is an integer below 2^47 computed without
+	 * error, and d = sqrt(s) &lt; 2^24. Since (k+1/2)^2 is never an integer,
+	 * the exact square root is at least 1/4 / (2d+1) away from any half
+	 * integer, while both sqrt and hypot are within one ulp (at most 2^-29 for d
+	 * &lt; 2^24) of it. Both are thus on the same side of the rounding boundary.
+	 */
+	static class Integral extends Euc2DDistanceMatrix {
+
+		Integral(double[] x, double[] y) {
+			super(x, y);
+		}
+
+		@Override
+		public long get(int i, int j) {
+			double dx = m_x[i] - m_x[j];
+			double dy = m_y[i] - m_y[j];
+			return (long) Math.rint(Math.sqrt(dx * dx + dy * dy));
+		}
+
+	}
+
+	/**
+	 * Distances between coordinates of absolute value below 2^28, computed
+	 * with <code>Math.sqrt(dx*dx + dy*dy)</code>, except when the result is
+	 * close to a half integer. <br>
+	 * <br>
+	 * The square root of the rounded sum is within 2^-51 d of the exact
+	 * distance d, and hypot within 2^-52 d. With d &lt; 2^30, both errors are
+	 * below 10^-6, so when the square root is more than 10^-6 away from a half
+	 * integer both round to the same integer. Otherwise hypot is called.
+	 */
+	static class Bounded extends Euc2DDistanceMatrix {
+
+		/** Distance to a half integer under which hypot is used. */
+		private static final double TIE = 1e-6;
+
+		Bounded(double[] x, double[] y) {
+			super(x, y);
+		}
+
+		@Override
+		public long get(int i, int j) {
+			double dx = m_x[i] - m_x[j];
+			double dy = m_y[i] - m_y[j];
+			double d = Math.sqrt(dx * dx + dy * dy);
+			double rounded = Math.rint(d);
+			if (Math.abs(Math.abs(d - rounded) - 0.5) < TIE)
+				return (long) Math.rint(Math.hypot(dx, dy));
+			return (long) rounded;
+		}
+
+	}
+
+}
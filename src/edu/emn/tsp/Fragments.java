@@ -0,0 +1,243 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+import java.util.Arrays;
+
+/**
+ * Set of vertex-disjoint paths (fragments) built edge by edge, as in the
+ * greedy edge and savings constructions. <br>
+ * <br>
+ * An edge is accepted by {@link #link(int, int)} if both its ends have
+ * degree below 2 and they are in different fragments, which a union-find
+ * structure (path halving, union by size) answers in almost constant time.
+ * Each vertex keeps its at most two neighbors. <br>
+ * <br>
+ * {@link #toRoute(Instance, int, int[])} then joins the fragments into a
+ * tour, greedily again: the edges from each free end to the nearest free end
+ * of another fragment are added by increasing length, round after round. For
+ * the Euclidean instances, the nearest end is searched in a {@link KdTree}
+ * that only holds the free ends, otherwise among all the free ends.
+ */
+class Fragments {
+
+	/** Number of vertices. */
+	private final int m_n;
+
+	/** The two neighbors of each vertex, at 2v and 2v+1, -1 if none. */
+	private final int[] m_adjacent;
+
+	/** Number of neighbors of each vertex. */
+	private final int[] m_degree;
+
+	/** Union-find parent of each vertex. */
+	private final int[] m_parent;
+
+	/** Size of the set of each root. */
+	private final int[] m_size;
+
+	/** Number of fragments, isolated vertices included. */
+	private int m_nbFragments;
+
+	/** @param n number of vertices, each one is a fragment. */
+	Fragments(int n) {
+		m_n = n;
+		m_adjacent = new int[2 * n];
+		m_degree = new int[n];
+		m_parent = new int[n];
+		m_size = new int[n];
+		for (int v = 0; v < n; v++) {
+			m_adjacent[2 * v] = -1;
+			m_adjacent[2 * v + 1] = -1;
+			m_parent[v] = v;
+			m_size[v] = 1;
+		}
+		m_nbFragments = n;
+	}
+
+	/** @return the number of fragments, isolated vertices included. */
+	int getNbFragments() {
+		return m_nbFragments;
+	}
+
+	/** @return the root of the set of v. */
+	private int find(int v) {
+		while (m_parent[v] != v) {
+			m_parent[v] = m_parent[m_parent[v]];
+			v = m_parent[v];
+		}
+		return v;
+	}
+
+	/**
+	 * Adds the edge (u,v) if u and v are ends of two different fragments.
+	 *
+	 * @return <code>true</code> if the edge was added.
+	 */
+	boolean link(int u, int v) {
+		if (m_degree[u] >= 2 || m_degree[v] >= 2)
+			return false;
+		int ru = find(u), rv = find(v);
+		if (ru == rv)
+			return false;
+		if (m_size[ru] < m_size[rv]) {
+			int tmp = ru;
+			ru = rv;
+			rv = tmp;
+		}
+		m_parent[rv] = ru;
+		m_size[ru] += m_size[rv];
+		addEdge(u, v);
+		m_nbFragments--;
+		return true;
+	}
+
+	/** Adds v to the neighbors of u and u to those of v. */
+	private void addEdge(int u, int v) {
+		m_adjacent[2 * u + m_degree[u]++] = v;
+		m_adjacent[2 * v + m_degree[v]++] = u;
+	}
+
+	/** @return the neighbor of v other than <code>from</code>, -1 if none. */
+	private int other(int v, int from) {
+		int a = m_adjacent[2 * v];
+		return a != from ? a : m_adjacent[2 * v + 1];
+	}
+
+	/**
+	 * Joins the fragments into a tour and writes it in <code>route</code>, of
+	 * size n+1, from vertex <code>first</code>.
+	 *
+	 * @param inst
+	 *            problem data, for the distances and the coordinates.
+	 */
+	void toRoute(Instance inst, int first, int[] route) {
+		joinEnds(inst);
+		int n = m_n;
+		int[] order = new int[n];
+		int v = 0;
+		while (m_degree[v] == 2) {
+			v++;
+		}
+		int from = -1;
+		for (int i = 0; i < n; i++) {
+			order[i] = v;
+			int w = other(v, from);
+			from = v;
+			v = w;
+		}
+
+		int p = 0;
+		while (order[p] != first) {
+			p++;
+		}
+		for (int i = 0; i < n; i++) {
+			route[i] = order[p];
+			if (++p == n)
+				p = 0;
+		}
+		route[n] = first;
+	}
+
+	/**
+	 * Links the fragments by their ends until a single path is left. Each
+	 * round, the nearest free end of another fragment is searched for every
+	 * free end, and these edges are added by increasing length, as long as
+	 * {@link #link(int, int)} accepts them. The shortest one always is, and
+	 * in practice each round links most of the fragments.
+	 */
+	private void joinEnds(Instance inst) {
+		if (m_nbFragments <= 1)
+			return;
+		int n = m_n;
+		DistanceMatrix distances = inst.getDistanceMatrix();
+		boolean euclidean = inst.isEuclideanOrder();
+		double scale = inst.getEuclideanScale();
+		// For the Euclidean instances, the free ends are kept in a tree
+		KdTree tree = euclidean ? new KdTree(inst.getXs(), inst.getYs())
+				: null;
+		int[] ends = new int[n];
+		int[] partner = new int[n];
+		int[] target = new int[n];
+		long[] keys = new long[n];
+		boolean[] seen = new boolean[n];
+
+		while (m_nbFragments > 1) {
+			int nbEnds = 0;
+			for (int v = 0; v < n; v++) {
+				if (m_degree[v] < 2) {
+					ends[nbEnds++] = v;
+					seen[v] = false;
+				} else if (euclidean) {
+					tree.remove(v);
+				}
+			}
+			// Other end of the fragment of each free end
+			for (int e = 0; e < nbEnds; e++) {
+				int u = ends[e];
+				if (seen[u])
+					continue;
+				int v = u, from = -1, w;
+				while ((w = other(v, from)) >= 0) {
+					from = v;
+					v = w;
+				}
+				partner[u] = v;
+				partner[v] = u;
+				seen[u] = true;
+				seen[v] = true;
+			}
+
+			int count = 0;
+			for (int e = 0; e < nbEnds; e++) {
+				int u = ends[e], p = partner[u];
+				int v = -1;
+				if (euclidean) {
+					tree.remove(u);
+					tree.remove(p);
+					v = tree.nearestRemaining(u, distances, scale);
+					tree.restore(u);
+					tree.restore(p);
+				} else {
+					long best = Long.MAX_VALUE;
+					for (int f = 0; f < nbEnds; f++) {
+						int w = ends[f];
+						if (w == u || w == p)
+							continue;
+						long d = distances.get(u, w);
+						if (d < best) {
+							best = d;
+							v = w;
+						}
+					}
+				}
+				long d = Math.min(distances.get(u, v), Integer.MAX_VALUE);
+				target[e] = v;
+				keys[count++] = (d << 32) | e;
+			}
+			Arrays.sort(keys, 0, count);
+			for (int k = 0; k < count; k++) {
+				int e = (int) keys[k];
+				link(ends[e], target[e]);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+import java.util.stream.IntStream;
+
+/**
+ * Distance matrix stored as a full <code>long[n][n]</code> array. Both
+ * <code>[i][j]</code> and <code>[j][i]</code> are stored.
+ */
+class FullDistanceMatrix implements DistanceMatrix {
+
+	/** Distance matrix */
+	private long[][] m_distances;
+
+	/**
+	 * Computes all the distances given by <code>source</code>. The rows are
+	 * computed in parallel, on the common fork-join pool.
+	 * 
+	 * @param source
+	 *            distances to store.
+	 * @param nbVertices
+	 *            number of vertices.
+	 */
+	FullDistanceMatrix(DistanceMatrix source, int nbVertices) {
+		m_distances = new long[nbVertices][];
+		for (int i = 0; i < nbVertices; i++) {
+			m_distances[i] = new long[nbVertices];
+		}
+
+		IntStream.range(0, nbVertices).parallel().forEach(i -> {
+			long[] row = m_distances[i];
+			for (int j = 0; j < nbVertices; j++) {
+				row[j] = source.get(i, j);
+			}
+		});
+	}
+
+	@Override
+	public long get(int i, int j) {
+		return m_distances[i][j];
+	}
+
+	@Override
+	public void getRow(int i, long[] row) {
+		System.arraycopy(m_distances[i], 0, row, 0, row.length);
+	}
+
+	/** @return the underlying array. */
+	long[][] getMatrix() {
+		return m_distances;
+	}
+
+}
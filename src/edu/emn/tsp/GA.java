@@ -183,11 +183,16 @@ public class GA {
 	public Solution crossover1(Solution parent1, Solution parent2)
 			throws Exception {
 		Solution enfant = new Solution(m_instance);
-
-		int startPos = (int) (Math.random() * m_instance.getNbVertices() - 1);
-		int endPos = (int) (Math.random() * m_instance.getNbVertices() - 1);
+		enfant.usePositionIndex();
+		int[] enfantTour = enfant.getTour();
+		int[] parent1Tour = parent1.getTour();
+		int[] parent2Tour = parent2.getTour();
+		int n = m_instance.getNbVertices();
+
+		int startPos = (int) (Math.random() * n - 1);
+		int endPos = (int) (Math.random() * n - 1);
 		while (endPos == startPos) {
-			endPos = (int) (Math.random() * m_instance.getNbVertices() - 1);
+			endPos = (int) (Math.random() * n - 1);
 		}
 		if (endPos < startPos) {
 			int transi = endPos;
@@ -195,24 +200,28 @@ public class GA {
 			startPos = transi;
 		}
 		// On ajoute le sous-tour à l'enfant
-		for (int i = 0; i < m_instance.getNbVertices(); i++) {
+		for (int i = 0; i < n; i++) {
 			if (i >= startPos && i <= endPos) {
-				enfant.setVertexPosition(parent1.getSolution(i), i);
+				enfant.setVertexPositionUnchecked(parent1Tour[i], i);
 			}
 		}
 
 		// On complète par le parent2
-		for (int i = 0; i < m_instance.getNbVertices(); i++) {
+		// les positions libres sont remplies dans l'ordre : la recherche
+		// reprend a la derniere position remplie
+		int j = 0;
+		for (int i = 0; i < n; i++) {
 			// Si l'enfant n'a pas encore la ville on l'ajoute
-			if (!enfant.contains(parent2.getSolution(i))) {
+			if (!enfant.contains(parent2Tour[i])) {
 				// On trouve une position libre pour l'ajouter
-				int j = 0;
-				while (!(enfant.getSolution(j) == 0)) {
+				while (!(enfantTour[j] == 0)) {
 					j++;
 				}
-				enfant.setVertexPosition(parent2.getSolution(i), j);
+				enfant.setVertexPositionUnchecked(parent2Tour[i], j);
 			}
 		}
+		// la tournee revient au premier sommet
+		enfantTour[n] = enfantTour[0];
 		return enfant;
 	}
 
@@ -223,35 +232,39 @@ public class GA {
 	public Solution crossover2(Solution parent1, Solution parent2)
 			throws Exception {
 		Solution enfant = new Solution(m_instance);
+		enfant.usePositionIndex();
+		int[] enfantTour = enfant.getTour();
+		int[] parent1Tour = parent1.getTour();
+		int[] parent2Tour = parent2.getTour();
+		int n = m_instance.getNbVertices();
+		parent2.usePositionIndex();
 
 		// garde les noeuds communs des deux parents
-		for (int i = 0; i < m_instance.getNbVertices(); i++) {
+		for (int i = 0; i < n; i++) {
 			// on regarde si la ville suivante l'est aussi dans le parent2 à
 			// l'indice d'après
-			if (parent1.getSolution(i + 1) == parent2.getSolution(parent2
-					.getIndice(parent1.getSolution(i)) + 1)) {
-				enfant.setVertexPosition(parent1.getSolution(i), i);
-				enfant.setVertexPosition(parent1.getSolution(i + 1), i + 1);
+			if (parent1Tour[i + 1] == parent2Tour[parent2
+					.getIndice(parent1Tour[i]) + 1]) {
+				enfant.setVertexPositionUnchecked(parent1Tour[i], i);
+				enfant.setVertexPositionUnchecked(parent1Tour[i + 1], i + 1);
 				i++;
 			} else {
 				// si la ville se trouve en première position dans le parent2,
 				// le précédent n'existe pas...
-				if (parent2.getIndice(parent1.getSolution(i)) == 0) {
-					if (parent1.getSolution(i + 1) == parent2
-							.getSolution(m_instance.getNbVertices() - 1)) {
-						enfant.setVertexPosition(parent1.getSolution(i), i);
-						enfant.setVertexPosition(parent1.getSolution(i + 1),
+				if (parent2.getIndice(parent1Tour[i]) == 0) {
+					if (parent1Tour[i + 1] == parent2Tour[n - 1]) {
+						enfant.setVertexPositionUnchecked(parent1Tour[i], i);
+						enfant.setVertexPositionUnchecked(parent1Tour[i + 1],
 								i + 1);
 						i++;
 					}
 				} else {
 					// on regarde si la ville suivante l'est aussi dans le
 					// parent2 à l'indice d'avant
-					if (parent1.getSolution(i + 1) == parent2
-							.getSolution(parent2.getIndice(parent1
-									.getSolution(i)) - 1)) {
-						enfant.setVertexPosition(parent1.getSolution(i), i);
-						enfant.setVertexPosition(parent1.getSolution(i + 1),
+					if (parent1Tour[i + 1] == parent2Tour[parent2
+							.getIndice(parent1Tour[i]) - 1]) {
+						enfant.setVertexPositionUnchecked(parent1Tour[i], i);
+						enfant.setVertexPositionUnchecked(parent1Tour[i + 1],
 								i + 1);
 						i++;
 					}
@@ -260,17 +273,21 @@ public class GA {
 		}
 
 		// On complète par le parent2
-		for (int i = 0; i < m_instance.getNbVertices(); i++) {
+		// les positions libres sont remplies dans l'ordre : la recherche
+		// reprend a la derniere position remplie
+		int j = 0;
+		for (int i = 0; i < n; i++) {
 			// Si l'enfant n'a pas encore la ville on l'ajoute
-			if (!enfant.contains(parent2.getSolution(i))) {
+			if (!enfant.contains(parent2Tour[i])) {
 				// On trouve une position libre pour l'ajouter
-				int j = 0;
-				while (!(enfant.getSolution(j) == 0)) {
+				while (!(enfantTour[j] == 0)) {
 					j++;
 				}
-				enfant.setVertexPosition(parent2.getSolution(i), j);
+				enfant.setVertexPositionUnchecked(parent2Tour[i], j);
 			}
 		}
+		// la tournee revient au premier sommet
+		enfantTour[n] = enfantTour[0];
 		return enfant;
 	}
 
@@ -282,6 +299,7 @@ public class GA {
 	public void mutate(Solution tour, double mutationRate,
 			double mutationRateNearest, double mutationReverse)
 			throws Exception {
+		int[] villes = tour.getTour();
 		for (int tourPos1 = 0; tourPos1 < m_instance.getNbVertices(); tourPos1++) {
 
 			int tourPos2 = 0;
@@ -295,21 +313,21 @@ public class GA {
 			if (Math.random() < mutationRate) {
 				tourPos2 = (int) (m_instance.getNbVertices() * Math.random());
 
-				int city1 = tour.getSolution(tourPos1);
-				int city2 = tour.getSolution(tourPos2);
+				int city1 = villes[tourPos1];
+				int city2 = villes[tourPos2];
 
-				tour.setVertexPosition(city1, tourPos2);
-				tour.setVertexPosition(city2, tourPos1);
+				tour.setVertexPositionUnchecked(city1, tourPos2);
+				tour.setVertexPositionUnchecked(city2, tourPos1);
 			}
 
 			if (Math.random() < mutationRateNearest) {
 				tourPos2 = tour.villeVoisine(tourPos1);
 
-				int city1 = tour.getSolution(tourPos1);
-				int city2 = tour.getSolution(tourPos2);
+				int city1 = villes[tourPos1];
+				int city2 = villes[tourPos2];
 
-				tour.setVertexPosition(city1, tourPos2);
-				tour.setVertexPosition(city2, tourPos1);
+				tour.setVertexPositionUnchecked(city1, tourPos2);
+				tour.setVertexPositionUnchecked(city2, tourPos1);
 			}
 
 		}
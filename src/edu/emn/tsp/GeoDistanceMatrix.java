@@ -0,0 +1,78 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+/**
+ * Geographical distances of the TSPLib edge weight type GEO, computed on
+ * demand. <br>
+ * <br>
+ * The coordinates are latitude (x) and longitude (y) given as DDD.MM, degrees
+ * and minutes. They are converted to radians once, in the constructor, so
+ * that a distance only costs the three cosines and the arc cosine of the
+ * TSPLib formula.
+ */
+class GeoDistanceMatrix implements DistanceMatrix {
+
+	/** Value of pi used by the TSPLib. */
+	private static final double PI = 3.141592;
+
+	/** Earth radius used by the TSPLib (km). */
+	private static final double RRR = 6378.388;
+
+	/** Latitude of each customer (radians). */
+	private final double[] m_latitude;
+
+	/** Longitude of each customer (radians). */
+	private final double[] m_longitude;
+
+	/**
+	 * @param x
+	 *            latitude of each customer (DDD.MM).
+	 * @param y
+	 *            longitude of each customer (DDD.MM).
+	 */
+	GeoDistanceMatrix(double[] x, double[] y) {
+		m_latitude = new double[x.length];
+		m_longitude = new double[y.length];
+		for (int i = 0; i < x.length; i++) {
+			m_latitude[i] = radians(x[i]);
+			m_longitude[i] = radians(y[i]);
+		}
+	}
+
+	/** Converts DDD.MM to radians, the TSPLib way. */
+	private static double radians(double v) {
+		double deg = (long) v;
+		double min = v - deg;
+		return PI * (deg + 5.0 * min / 3.0) / 180.0;
+	}
+
+	@Override
+	public long get(int i, int j) {
+		if (i == j)
+			return 0;
+		double q1 = Math.cos(m_longitude[i] - m_longitude[j]);
+		double q2 = Math.cos(m_latitude[i] - m_latitude[j]);
+		double q3 = Math.cos(m_latitude[i] + m_latitude[j]);
+		return (long) (RRR
+				* Math.acos(0.5 * ((1.0 + q1) * q2 - (1.0 - q1) * q3)) + 1.0);
+	}
+
+}
@@ -0,0 +1,103 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+import java.util.Arrays;
+
+/**
+ * Order of the vertices along a Hilbert curve. <br>
+ * <br>
+ * The bounding box of the coordinates is scaled to a grid of 2^
+ * {@link #ORDER} cells per side, and each vertex gets the index of its cell
+ * along the curve that fills the grid. Two vertices that are close along the
+ * curve are close in the plane, so the order gives both a starting tour and
+ * a numbering of the vertices in which the neighbors of a vertex have close
+ * numbers. Sorting the indices takes O(n log n), with no distance computed.
+ */
+class HilbertCurve {
+
+	/** Number of bits of each coordinate on the grid. */
+	static final int ORDER = 20;
+
+	/** Number of bits left for the vertex in the sort keys. */
+	private static final int VERTEX_BITS = 63 - 2 * ORDER;
+
+	/**
+	 * @return the index along the curve of the cell (x,y) of the grid, both
+	 *         between 0 and 2^ORDER - 1.
+	 */
+	static long index(int x, int y) {
+		int side = 1 << ORDER;
+		long d = 0;
+		for (int s = side >>> 1; s > 0; s >>>= 1) {
+			int rx = (x & s) != 0 ? 1 : 0;
+			int ry = (y & s) != 0 ? 1 : 0;
+			d += (long) s * s * ((3 * rx) ^ ry);
+			// Rotation of the quadrant, so that the curve is continuous
+			if (ry == 0) {
+				if (rx == 1) {
+					x = side - 1 - x;
+					y = side - 1 - y;
+				}
+				int tmp = x;
+				x = y;
+				y = tmp;
+			}
+		}
+		return d;
+	}
+
+	/**
+	 * @param x
+	 *            x coordinates of the vertices.
+	 * @param y
+	 *            y coordinates of the vertices (fewer than 2^23 vertices).
+	 * @return the vertices in the order of the curve, ties broken by vertex
+	 *         number.
+	 */
+	static int[] order(double[] x, double[] y) {
+		int n = x.length;
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for (int i = 0; i < n; i++) {
+			minX = Math.min(minX, x[i]);
+			maxX = Math.max(maxX, x[i]);
+			minY = Math.min(minY, y[i]);
+			maxY = Math.max(maxY, y[i]);
+		}
+		double extent = Math.max(maxX - minX, maxY - minY);
+		double scale = extent > 0 ? ((1 << ORDER) - 1) / extent : 0;
+
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++) {
+			int cx = (int) ((x[i] - minX) * scale);
+			int cy = (int) ((y[i] - minY) * scale);
+			keys[i] = (index(cx, cy) << VERTEX_BITS) | i;
+		}
+		Arrays.sort(keys);
+		int[] order = new int[n];
+		long mask = (1L << VERTEX_BITS) - 1;
+		for (int i = 0; i < n; i++) {
+			order[i] = (int) (keys[i] & mask);
+		}
+		return order;
+	}
+
+}
@@ -0,0 +1,147 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+/**
+ * Binary min-heap of vertices keyed by a <code>long</code>, with the
+ * position of each vertex in the heap, so that the key of any vertex can be
+ * changed or the vertex removed in O(log n). Ties are broken by vertex
+ * number, so the order of the vertices does not depend on the history of the
+ * heap.
+ */
+class IndexedHeap {
+
+	/** Vertices, heap ordered. */
+	private final int[] m_heap;
+
+	/** Position of each vertex in m_heap, -1 if it is not in the heap. */
+	private final int[] m_pos;
+
+	/** Key of each vertex in the heap. */
+	private final long[] m_key;
+
+	/** Number of vertices in the heap. */
+	private int m_size;
+
+	/** @param n number of vertices, numbered from 0 to n-1. */
+	IndexedHeap(int n) {
+		m_heap = new int[n];
+		m_pos = new int[n];
+		m_key = new long[n];
+		for (int v = 0; v < n; v++) {
+			m_pos[v] = -1;
+		}
+	}
+
+	/** @return <code>true</code> if the heap is empty. */
+	boolean isEmpty() {
+		return m_size == 0;
+	}
+
+	/** @return <code>true</code> if v is in the heap. */
+	boolean contains(int v) {
+		return m_pos[v] >= 0;
+	}
+
+	/** Inserts v with the given key, or changes its key if it is there. */
+	void set(int v, long key) {
+		int p = m_pos[v];
+		if (p < 0) {
+			p = m_size++;
+			m_heap[p] = v;
+			m_pos[v] = p;
+			m_key[v] = key;
+			up(p);
+		} else {
+			long old = m_key[v];
+			m_key[v] = key;
+			if (key < old)
+				up(p);
+			else
+				down(p);
+		}
+	}
+
+	/** Removes v from the heap, if it is there. */
+	void remove(int v) {
+		int p = m_pos[v];
+		if (p < 0)
+			return;
+		m_pos[v] = -1;
+		int last = m_heap[--m_size];
+		if (p == m_size)
+			return;
+		m_heap[p] = last;
+		m_pos[last] = p;
+		up(p);
+		down(m_pos[last]);
+	}
+
+	/**
+	 * Removes the vertex with the smallest key.
+	 *
+	 * @return this vertex. The heap must not be empty.
+	 */
+	int poll() {
+		int v = m_heap[0];
+		remove(v);
+		return v;
+	}
+
+	/** @return <code>true</code> if u comes before v. */
+	private boolean less(int u, int v) {
+		return m_key[u] < m_key[v] || (m_key[u] == m_key[v] && u < v);
+	}
+
+	private void up(int p) {
+		int v = m_heap[p];
+		while (p > 0) {
+			int parent = (p - 1) >>> 1;
+			int u = m_heap[parent];
+			if (!less(v, u))
+				break;
+			m_heap[p] = u;
+			m_pos[u] = p;
+			p = parent;
+		}
+		m_heap[p] = v;
+		m_pos[v] = p;
+	}
+
+	private void down(int p) {
+		int v = m_heap[p];
+		while (true) {
+			int child = 2 * p + 1;
+			if (child >= m_size)
+				break;
+			if (child + 1 < m_size && less(m_heap[child + 1], m_heap[child]))
+				child++;
+			int u = m_heap[child];
+			if (!less(u, v))
+				break;
+			m_heap[p] = u;
+			m_pos[u] = p;
+			p = child;
+		}
+		m_heap[p] = v;
+		m_pos[v] = p;
+	}
+
+}
@@ -0,0 +1,277 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+/**
+ * Insertion constructions: the tour starts with a single vertex, and the
+ * other vertices are inserted one at a time at the position where they
+ * increase its length the least. The tour is a doubly linked list, so an
+ * insertion costs O(1). <br>
+ * <br>
+ * The positions are searched with the candidate lists of
+ * {@link Instance#getNeighbors(int)}: a vertex v may be inserted next to the
+ * candidates of v already in the tour, on one of their two tour edges. When
+ * none of them is in the tour, the whole tour is scanned. <br>
+ * <br>
+ * {@link #cheapest(int)} inserts the vertex whose insertion is the cheapest.
+ * The cost of each vertex out of the tour is kept in an {@link IndexedHeap}.
+ * Inserting v between a and b only changes the cost of the vertices that
+ * have a, b or v as a candidate, found in the reverse candidate lists, so an
+ * insertion costs O(k&sup2; log n). The vertices none of whose candidates
+ * are in the tour are not in the heap: when the heap is empty, the vertex of
+ * smallest number out of the tour is inserted by scanning the tour. <br>
+ * <br>
+ * {@link #farthest(int)} inserts the vertex whose distance to the tour is
+ * the largest. These distances are updated after each insertion, in O(n), so
+ * the construction takes O(n&sup2;).
+ */
+class Insertion {
+
+	/** Cost of a vertex that has no candidate in the tour. */
+	private static final long NONE = Long.MAX_VALUE;
+
+	/** Number of vertices. */
+	private final int m_n;
+
+	/** Distances of the problem. */
+	private final DistanceMatrix m_distances;
+
+	/** Candidate lists, k per vertex. */
+	private final int[] m_neighbors;
+
+	/** Number of candidates per vertex. */
+	private final int m_k;
+
+	/** Reverse candidate lists. */
+	private final ReverseNeighbors m_reverse;
+
+	/** Next vertex on the tour. */
+	private final int[] m_next;
+
+	/** Previous vertex on the tour. */
+	private final int[] m_prev;
+
+	/** True if the vertex is in the tour. */
+	private final boolean[] m_inTour;
+
+	/** Number of vertices in the tour. */
+	private int m_size;
+
+	/** Vertex after which the last evaluated vertex is best inserted. */
+	private int m_after;
+
+	/**
+	 * @param inst
+	 *            problem data.
+	 * @param k
+	 *            number of candidates per vertex.
+	 */
+	Insertion(Instance inst, int k) throws Exception {
+		int n = inst.getNbVertices();
+		m_n = n;
+		m_distances = inst.getDistanceMatrix();
+		m_k = Math.min(k, n - 1);
+		m_neighbors = n > 1 ? inst.getNeighbors(k) : new int[0];
+		m_reverse = new ReverseNeighbors(m_neighbors, n, m_k);
+		m_next = new int[n];
+		m_prev = new int[n];
+		m_inTour = new boolean[n];
+	}
+
+	/** Starts the tour with vertex first alone. */
+	private void start(int first) {
+		m_next[first] = first;
+		m_prev[first] = first;
+		m_inTour[first] = true;
+		m_size = 1;
+	}
+
+	/** Inserts v between a and its successor. */
+	private void insert(int v, int a) {
+		int b = m_next[a];
+		m_next[a] = v;
+		m_prev[v] = a;
+		m_next[v] = b;
+		m_prev[b] = v;
+		m_inTour[v] = true;
+		m_size++;
+	}
+
+	/** @return the cost of inserting v between a and its successor. */
+	private long delta(int v, int a) {
+		int b = m_next[a];
+		return m_distances.get(a, v) + m_distances.get(v, b)
+				- m_distances.get(a, b);
+	}
+
+	/**
+	 * @return the cost of the best insertion of v next to its candidates in
+	 *         the tour, {@link #NONE} if it has none, and sets m_after.
+	 */
+	private long candidateCost(int v) {
+		long best = NONE;
+		for (int s = v * m_k; s < v * m_k + m_k; s++) {
+			int c = m_neighbors[s];
+			if (!m_inTour[c])
+				continue;
+			long d = delta(v, c);
+			if (d < best) {
+				best = d;
+				m_after = c;
+			}
+			d = delta(v, m_prev[c]);
+			if (d < best) {
+				best = d;
+				m_after = m_prev[c];
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return the cost of the best insertion of v on the whole tour, and sets
+	 *         m_after.
+	 */
+	private long tourCost(int v, int first) {
+		long best = NONE;
+		int a = first;
+		do {
+			long d = delta(v, a);
+			if (d < best) {
+				best = d;
+				m_after = a;
+			}
+			a = m_next[a];
+		} while (a != first);
+		return best;
+	}
+
+	/** Cheapest insertion from vertex first. */
+	void cheapest(int first) {
+		IndexedHeap heap = new IndexedHeap(m_n);
+		int[] after = new int[m_n];
+		start(first);
+		update(first, heap, after);
+		int smallest = 0;
+		while (m_size < m_n) {
+			int v;
+			if (!heap.isEmpty()) {
+				v = heap.poll();
+			} else {
+				while (m_inTour[smallest]) {
+					smallest++;
+				}
+				v = smallest;
+				tourCost(v, first);
+				after[v] = m_after;
+			}
+			int a = after[v], b = m_next[a];
+			insert(v, a);
+			update(a, heap, after);
+			update(b, heap, after);
+			update(v, heap, after);
+		}
+	}
+
+	/**
+	 * Evaluates again the vertices out of the tour that have v as a
+	 * candidate.
+	 */
+	private void update(int v, IndexedHeap heap, int[] after) {
+		for (int r = m_reverse.m_start[v]; r < m_reverse.m_start[v + 1]; r++) {
+			int u = m_reverse.m_list[r];
+			if (m_inTour[u])
+				continue;
+			long cost = candidateCost(u);
+			if (cost == NONE) {
+				heap.remove(u);
+			} else {
+				heap.set(u, cost);
+				after[u] = m_after;
+			}
+		}
+	}
+
+	/** Farthest insertion from vertex first. */
+	void farthest(int first) {
+		// Vertices out of the tour, in out[0..nbOut), with their distance to
+		// the tour
+		int[] out = new int[m_n - 1];
+		long[] distance = new long[m_n];
+		int nbOut = 0;
+		for (int v = 0; v < m_n; v++) {
+			if (v != first) {
+				out[nbOut++] = v;
+				distance[v] = m_distances.get(first, v);
+			}
+		}
+		start(first);
+		int farthest = farthestOut(out, nbOut, distance);
+		while (nbOut > 0) {
+			int v = out[farthest];
+			out[farthest] = out[--nbOut];
+			if (candidateCost(v) == NONE)
+				tourCost(v, first);
+			insert(v, m_after);
+			// Update of the distances to the tour and next farthest vertex,
+			// in the same pass
+			farthest = 0;
+			for (int i = 0; i < nbOut; i++) {
+				int u = out[i];
+				long d = m_distances.get(v, u);
+				if (d < distance[u])
+					distance[u] = d;
+				int w = out[farthest];
+				if (distance[u] > distance[w]
+						|| (distance[u] == distance[w] && u < w))
+					farthest = i;
+			}
+		}
+	}
+
+	/**
+	 * @return the index in out of the vertex with the largest distance, the
+	 *         smallest vertex number among ties.
+	 */
+	private static int farthestOut(int[] out, int nbOut, long[] distance) {
+		int farthest = 0;
+		for (int i = 1; i < nbOut; i++) {
+			int u = out[i], w = out[farthest];
+			if (distance[u] > distance[w]
+					|| (distance[u] == distance[w] && u < w))
+				farthest = i;
+		}
+		return farthest;
+	}
+
+	/**
+	 * Writes the tour in <code>route</code>, of size n+1, from vertex
+	 * <code>first</code>.
+	 */
+	void toRoute(int first, int[] route) {
+		int v = first;
+		for (int i = 0; i < m_n; i++) {
+			route[i] = v;
+			v = m_next[v];
+		}
+		route[m_n] = first;
+	}
+
+}
@@ -22,26 +22,58 @@ package edu.emn.tsp;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.Locale;
-import java.util.Scanner;
+import java.nio.file.Files;
+import java.util.Arrays;
 
 /**
  * The Instance class allows to create an object that contains the data stored
  * in a tsp file. <br>
  * <br>
- * Only 2D EUCLIDEAN problems can be read, that is problems where the customer
- * coordinates are given and the distance between two customers is the euclidean
- * distance. <br>
+ * The symmetric problems of the TSPLib can be read: the distance between two
+ * customers is computed from their coordinates (edge weight types EUC_2D,
+ * CEIL_2D, ATT and GEO) or given in the file (EXPLICIT, in any matrix
+ * format). For explicit problems, the coordinates are read from the
+ * DISPLAY_DATA_SECTION when there is one, otherwise they are all 0. <br>
  * <br>
  * The class is created through its constructor that takes the data file as
  * parameter. The data file is read and the data are stored in the Instance
- * object. The data can then be access calling the object methods.
+ * object. The data can then be access calling the object methods. <br>
+ * <br>
+ * The distances are either stored in a matrix computed when the file is read,
+ * or computed on the fly from the coordinates (see {@link DistanceStorage}).
+ * By default, the matrix is stored as a packed triangle of <code>int</code>
+ * unless it would take more than half of the memory available to the JVM.
+ * <br>
+ * <br>
+ * The vertices can be renumbered along a Hilbert curve when the instance is
+ * read (see {@link #Instance(String, DistanceStorage, boolean, boolean, boolean)}),
+ * so that the vertices that are close in the plane are also close in the
+ * coordinate arrays and in the distance matrix. The labels follow the
+ * vertices, and {@link #getOriginalVertex(int)} gives the number of a vertex
+ * in the file.
  * 
  * @author Fabien Lehuédé
  * 
  */
 public class Instance {
 
+	/** The ways the distances can be made available. */
+	public enum DistanceStorage {
+		/** Packed matrix unless it does not fit in memory, then on the fly. */
+		AUTO,
+		/** Lower triangle of the matrix stored in a single int array. */
+		PACKED,
+		/** Full long[n][n] matrix, both [i][j] and [j][i] are stored. */
+		FULL,
+		/**
+		 * Lower triangle stored in the file {@link Instance#getMatrixFile()},
+		 * mapped in memory. The file is built at the first run.
+		 */
+		MAPPED,
+		/** Distances are computed from the coordinates at each call. */
+		ON_THE_FLY
+	}
+
 	// --------------------------------------------
 	// --------------- ATTRIBUTES ------------------
 	// --------------------------------------------
@@ -59,8 +91,47 @@ public class Instance {
 	 */
 	private String[] labels;
 
-	/** Distance matrix */
-	private long[][] m_distances;
+	/** Distances between vertices (stored or computed on the fly). */
+	private DistanceMatrix m_distances;
+
+	/** Storage requested for the distances. */
+	private DistanceStorage m_storage;
+
+	/** If true, the specification part of the file is printed when read. */
+	private boolean m_verbose;
+
+	/** If true, the instance is loaded from (and saved to) a snapshot. */
+	private boolean m_cache;
+
+	/** If true, the vertices are renumbered along a Hilbert curve. */
+	private boolean m_renumber;
+
+	/**
+	 * Number in the file of each vertex, when the vertices are renumbered,
+	 * otherwise null.
+	 */
+	private int[] m_original;
+
+	/** Edge weight type given in the TSP file. */
+	private String m_edgeWeightType;
+
+	/**
+	 * For EXPLICIT instances, lower triangle of the distance matrix read in
+	 * the file.
+	 */
+	private int[] m_explicitWeights;
+
+	/** Candidate lists computed by the last call to getNeighbors. */
+	private int[] m_neighbors;
+
+	/** Number of neighbors per vertex in m_neighbors. */
+	private int m_nbNeighbors;
+
+	/** Time spent reading the file (ms). */
+	private long m_parseTime;
+
+	/** Time spent building the distance storage (ms). */
+	private long m_distanceTime;
 
 	/** TSP file from the Euclidean tsp files of the TSPLib that is loaded. */
 	private String m_fileName;
@@ -119,18 +190,43 @@ public class Instance {
 	}
 
 	/**
-	 * Returns the euclidean distance rounded to the nearest integer value
-	 * between two vertices. All distances are calculated when the tsp file is
-	 * loaded, so this function does not calculate distances. Note: problems are
-	 * symmetric, the distance from vertex i to vertex j is equal to the
-	 * distance from j to i.
+	 * @param i
+	 *            vertex number (should be defined between 0 an the number of
+	 *            vertices in the problem minus one).
+	 * @return the number of vertex i in the file (the vertex at the same
+	 *         position in its coordinate section, from 0), which differs from
+	 *         i when the vertices are renumbered.
+	 * @throws Exception
+	 **/
+	public int getOriginalVertex(int i) throws Exception {
+		if ((i < 0) || (i >= m_nbVertices))
+			throw new Exception("Error : vertex index " + i
+					+ " should range between 0 and " + (m_nbVertices - 1) + ".");
+		return m_original == null ? i : m_original[i];
+	}
+
+	/**
+	 * @return <code>true</code> if the vertices were renumbered along a
+	 *         Hilbert curve.
+	 */
+	public boolean isRenumbered() {
+		return m_original != null;
+	}
+
+	/**
+	 * Returns the distance between two vertices, as defined by the edge weight
+	 * type of the file (for EUC_2D, the euclidean distance rounded to the
+	 * nearest integer value). Unless the instance is read with
+	 * {@link DistanceStorage#ON_THE_FLY}, all distances are calculated when the
+	 * tsp file is loaded, so this function does not calculate distances. Note:
+	 * problems are symmetric, the distance from vertex i to vertex j is equal
+	 * to the distance from j to i.
 	 * 
 	 * @param i
 	 *            origin vertex (should range between 0 and nbVertex-1).
 	 * @param j
 	 *            destination vertex (should range between 0 and nbVertex-1).
-	 * @return Returns the euclidean distance from i to j rounded to the nearest
-	 *         integer value
+	 * @return Returns the distance from i to j
 	 * @throws Exception
 	 *             returns an error if i or j are not valid vertex numbers.
 	 **/
@@ -141,16 +237,197 @@ public class Instance {
 		if ((j < 0) || (j >= m_nbVertices))
 			throw new Exception("Error : vertex index " + j
 					+ " should range between 0 and " + (m_nbVertices - 1) + ".");
-		return m_distances[i][j];
+		return m_distances.get(i, j);
 	}
 
 	/**
-	 * @return Returns the whole distance matrix.
+	 * @return Returns the whole distance matrix. When the distances are not
+	 *         stored as a full matrix, the matrix is built by this call, which
+	 *         requires n&sup2; longs of memory.
 	 */
 	public long[][] getDistances() {
+		if (m_distances instanceof FullDistanceMatrix)
+			return ((FullDistanceMatrix) m_distances).getMatrix();
+		return new FullDistanceMatrix(m_distances, m_nbVertices).getMatrix();
+	}
+
+	/**
+	 * Copies the distances from vertex i to every vertex into
+	 * <code>row</code>. This is faster than calling
+	 * {@link #getDistances(int, int)} for each vertex.
+	 * 
+	 * @param i
+	 *            origin vertex (should range between 0 and nbVertex-1).
+	 * @param row
+	 *            array of size nbVertex that receives the distances.
+	 * @throws Exception
+	 *             returns an error if i is not a valid vertex number or row
+	 *             does not have nbVertex elements.
+	 */
+	public void getDistanceRow(int i, long[] row) throws Exception {
+		if ((i < 0) || (i >= m_nbVertices))
+			throw new Exception("Error : vertex index " + i
+					+ " should range between 0 and " + (m_nbVertices - 1) + ".");
+		if (row.length != m_nbVertices)
+			throw new Exception("Error : row size " + row.length
+					+ " should be " + m_nbVertices + ".");
+		m_distances.getRow(i, row);
+	}
+
+	/**
+	 * Returns the candidate lists of the k nearest neighbors of every vertex.
+	 * <br>
+	 * <br>
+	 * For the edge weight types that only depend on the Euclidean distance
+	 * (EUC_2D, CEIL_2D, ATT), the lists are computed with a {@link KdTree}
+	 * in O(n log n). For the other types, each row of the distance matrix is
+	 * scanned. The lists are kept, so asking again for the same k is free.
+	 * 
+	 * @param k
+	 *            number of neighbors per vertex (reduced to nbVertex-1 if
+	 *            larger).
+	 * @return an array of n*k vertices: the neighbors of vertex i, from the
+	 *         nearest, are at indices i*k to i*k+k-1. Do not modify it.
+	 * @throws Exception
+	 *             returns an error if k is not positive.
+	 */
+	public synchronized int[] getNeighbors(int k) throws Exception {
+		if (k <= 0)
+			throw new Exception("Error : the number of neighbors " + k
+					+ " should be positive.");
+		k = Math.min(k, m_nbVertices - 1);
+		if (m_neighbors == null || m_nbNeighbors != k) {
+			if (isEuclideanOrder()) {
+				m_neighbors = new KdTree(m_x, m_y).nearest(k);
+			} else {
+				m_neighbors = nearestByRows(k);
+			}
+			m_nbNeighbors = k;
+		}
+		return m_neighbors;
+	}
+
+	/**
+	 * @return <code>true</code> if the distances are an increasing function
+	 *         of the Euclidean distance between the coordinates (so that a
+	 *         {@link KdTree} can answer nearest neighbor queries).
+	 */
+	boolean isEuclideanOrder() {
+		return m_edgeWeightType.equals("EUC_2D")
+				|| m_edgeWeightType.equals("CEIL_2D")
+				|| m_edgeWeightType.equals("ATT");
+	}
+
+	/**
+	 * @return the ratio s such that the distances are at least s times the
+	 *         Euclidean distance minus 1, when {@link #isEuclideanOrder()}.
+	 */
+	double getEuclideanScale() {
+		return m_edgeWeightType.equals("ATT") ? 1.0 / Math.sqrt(10.0) : 1.0;
+	}
+
+	/**
+	 * @return the number in the file of each vertex, null if the vertices
+	 *         were not renumbered, for package classes. Do not modify.
+	 */
+	int[] getOriginalVertices() {
+		return m_original;
+	}
+
+	/** @return the x coordinates, for package classes. Do not modify. */
+	double[] getXs() {
+		return m_x;
+	}
+
+	/** @return the y coordinates, for package classes. Do not modify. */
+	double[] getYs() {
+		return m_y;
+	}
+
+	/**
+	 * Returns the distance matrix itself. Unlike
+	 * {@link #getDistances(int, int)}, {@link DistanceMatrix#get(int, int)}
+	 * does not check the vertex indices and does not throw any exception, so
+	 * it should be preferred in the inner loops of the algorithms.
+	 * 
+	 * @return the distances between vertices, without range checking.
+	 */
+	public DistanceMatrix getDistanceMatrix() {
 		return m_distances;
 	}
 
+	/** Computes the k nearest neighbors by scanning the distance matrix. */
+	private int[] nearestByRows(int k) {
+		int[] neighbors = new int[m_nbVertices * k];
+		long[] best = new long[k];
+		for (int i = 0; i < m_nbVertices; i++) {
+			int count = 0;
+			for (int j = 0; j < m_nbVertices; j++) {
+				if (j == i)
+					continue;
+				long d = m_distances.get(i, j);
+				if (count == k && d >= best[k - 1])
+					continue;
+				// Insertion in the sorted list of the k best
+				int p = count < k ? count++ : k - 1;
+				while (p > 0 && best[p - 1] > d) {
+					best[p] = best[p - 1];
+					neighbors[i * k + p] = neighbors[i * k + p - 1];
+					p--;
+				}
+				best[p] = d;
+				neighbors[i * k + p] = j;
+			}
+		}
+		return neighbors;
+	}
+
+	/**
+	 * @return the file that stores the distance matrix with
+	 *         {@link DistanceStorage#MAPPED}: the instance file name followed
+	 *         by ".dist".
+	 */
+	public String getMatrixFile() {
+		return m_fileName + ".dist";
+	}
+
+	/**
+	 * @return the file that stores the binary snapshot of the instance: the
+	 *         instance file name followed by ".bin".
+	 */
+	public String getCacheFile() {
+		return m_fileName + ".bin";
+	}
+
+	/** @return the edge weight type given in the TSP file. */
+	public String getEdgeWeightType() {
+		return m_edgeWeightType;
+	}
+
+	/**
+	 * @return the time spent reading and parsing the file (or loading its
+	 *         snapshot), in milliseconds.
+	 */
+	public long getParseTime() {
+		return m_parseTime;
+	}
+
+	/**
+	 * @return the time spent computing the distance matrix (or mapping it),
+	 *         in milliseconds.
+	 */
+	public long getDistanceTime() {
+		return m_distanceTime;
+	}
+
+	/**
+	 * @return the storage actually used for the distances (never
+	 *         {@link DistanceStorage#AUTO}).
+	 */
+	public DistanceStorage getDistanceStorage() {
+		return m_storage;
+	}
+
 	/**
 	 * @return Return the name of the instance file.
 	 */
@@ -172,7 +449,101 @@ public class Instance {
 	 *             Returns an error when a problem is met reading the data file.
 	 */
 	public Instance(String fileName) throws IOException {
+		this(fileName, DistanceStorage.AUTO);
+	}
+
+	/**
+	 * Constructor: this method creates an object of class Instance. It calls
+	 * the read method to load the data file given as parameter.
+	 * 
+	 * @param fileName
+	 *            instance file
+	 * @param storage
+	 *            how the distances should be made available.
+	 * @throws IOException
+	 *             Returns an error when a problem is met reading the data file.
+	 */
+	public Instance(String fileName, DistanceStorage storage)
+			throws IOException {
+		this(fileName, storage, false);
+	}
+
+	/**
+	 * Constructor: this method creates an object of class Instance. It calls
+	 * the read method to load the data file given as parameter.
+	 * 
+	 * @param fileName
+	 *            instance file
+	 * @param storage
+	 *            how the distances should be made available.
+	 * @param verbose
+	 *            if true, the specification part of the file is printed on
+	 *            the error output.
+	 * @throws IOException
+	 *             Returns an error when a problem is met reading the data file.
+	 */
+	public Instance(String fileName, DistanceStorage storage, boolean verbose)
+			throws IOException {
+		this(fileName, storage, verbose, false);
+	}
+
+	/**
+	 * Constructor: this method creates an object of class Instance. It calls
+	 * the read method to load the data file given as parameter.
+	 * 
+	 * @param fileName
+	 *            instance file
+	 * @param storage
+	 *            how the distances should be made available.
+	 * @param verbose
+	 *            if true, the specification part of the file is printed on
+	 *            the error output.
+	 * @param cache
+	 *            if true, the instance is loaded from the binary snapshot
+	 *            {@link #getCacheFile()} when it matches the file. Otherwise
+	 *            the file is parsed and the snapshot is written, with the
+	 *            distance matrix when it is packed.
+	 * @throws IOException
+	 *             Returns an error when a problem is met reading the data file.
+	 */
+	public Instance(String fileName, DistanceStorage storage, boolean verbose,
+			boolean cache) throws IOException {
+		this(fileName, storage, verbose, cache, false);
+	}
+
+	/**
+	 * Constructor: this method creates an object of class Instance. It calls
+	 * the read method to load the data file given as parameter.
+	 * 
+	 * @param fileName
+	 *            instance file
+	 * @param storage
+	 *            how the distances should be made available.
+	 * @param verbose
+	 *            if true, the specification part of the file is printed on
+	 *            the error output.
+	 * @param cache
+	 *            if true, the instance is loaded from the binary snapshot
+	 *            {@link #getCacheFile()} when it matches the file. Otherwise
+	 *            the file is parsed and the snapshot is written, with the
+	 *            distance matrix when it is packed.
+	 * @param renumber
+	 *            if true, the vertices are renumbered in the order of a
+	 *            Hilbert curve over their coordinates, before the distances
+	 *            are stored (see {@link HilbertCurve}). EXPLICIT instances are
+	 *            not renumbered. The snapshot keeps the numbering of the file:
+	 *            it is read but its matrix is not used, and it is not
+	 *            written.
+	 * @throws IOException
+	 *             Returns an error when a problem is met reading the data file.
+	 */
+	public Instance(String fileName, DistanceStorage storage, boolean verbose,
+			boolean cache, boolean renumber) throws IOException {
 		m_fileName = fileName;
+		m_storage = storage;
+		m_verbose = verbose;
+		m_cache = cache;
+		m_renumber = renumber;
 		read();
 	}
 
@@ -187,68 +558,311 @@ public class Instance {
 			throw new IOException("The instance file : " + m_fileName
 					+ " does not exist.");
 		}
-		Scanner sc = new Scanner(mfile);
-
-		String line;
-		do {
-			line = sc.nextLine();
-			System.err.println(line);
-		} while (!line.startsWith("DIMENSION"));
-		Scanner lineSc = new Scanner(line);
-		lineSc.next();
-		if (!lineSc.hasNextInt()) {
-			lineSc.next();
+		long t = System.currentTimeMillis();
+		byte[] source = Files.readAllBytes(mfile.toPath());
+		byte[] hash = null;
+		InstanceCache cache = null;
+		if (m_cache) {
+			hash = InstanceCache.hash(source);
+			cache = InstanceCache.read(new File(getCacheFile()), hash);
+			// The weights of an EXPLICIT instance are only in the triangle:
+			// a snapshot without it is not usable
+			if (cache != null && cache.m_edgeWeightType.equals("EXPLICIT")
+					&& cache.m_triangle == null)
+				cache = null;
+		}
+		if (cache != null) {
+			m_nbVertices = cache.m_x.length;
+			m_edgeWeightType = cache.m_edgeWeightType;
+			m_x = cache.m_x;
+			m_y = cache.m_y;
+			labels = cache.m_labels;
+			if (m_edgeWeightType.equals("EXPLICIT"))
+				m_explicitWeights = cache.m_triangle;
+		} else {
+			parse(new TSPLibParser(source, m_fileName));
+		}
+		if (m_renumber && m_explicitWeights == null)
+			renumber();
+		m_parseTime = System.currentTimeMillis() - t;
+		t = System.currentTimeMillis();
+
+		// Create the distance matrix, or compute distances on the fly. The
+		// kernel of the edge weight type is chosen once, here.
+		DistanceMatrix kernel = createKernel();
+		boolean explicit = m_explicitWeights != null;
+		if (explicit && (m_storage == DistanceStorage.AUTO
+				|| m_storage == DistanceStorage.ON_THE_FLY)) {
+			// Explicit weights are already a packed matrix
+			m_storage = DistanceStorage.PACKED;
+		} else if (m_storage == DistanceStorage.AUTO) {
+			m_storage = packedFits() ? DistanceStorage.PACKED
+					: DistanceStorage.ON_THE_FLY;
+		}
+		if (m_storage == DistanceStorage.PACKED) {
+			if (m_nbVertices > PackedDistanceMatrix.MAX_VERTICES)
+				throw new IOException("The instance file : " + m_fileName
+						+ " has too many vertices for a packed matrix.");
+			if (explicit) {
+				m_distances = kernel;
+			} else if (cache != null && cache.m_triangle != null
+					&& m_original == null) {
+				m_distances = new PackedDistanceMatrix(cache.m_triangle,
+						m_nbVertices);
+			} else {
+				m_distances = new PackedDistanceMatrix(kernel, m_nbVertices);
+			}
+		} else if (m_storage == DistanceStorage.FULL) {
+			m_distances = new FullDistanceMatrix(kernel, m_nbVertices);
+		} else if (m_storage == DistanceStorage.MAPPED) {
+			if (!explicit && !distancesFitInt())
+				throw new IOException("The instance file : " + m_fileName
+						+ " has distances too large for a mapped matrix.");
+			m_distances = new MappedDistanceMatrix(new File(getMatrixFile()),
+					kernel, m_nbVertices, fingerprint());
+		} else {
+			m_distances = kernel;
+		}
+		m_distanceTime = System.currentTimeMillis() - t;
+
+		// Write the snapshot if it was missing or does not have the matrix
+		boolean packed = m_storage == DistanceStorage.PACKED;
+		if (m_cache && m_original == null
+				&& (cache == null || (packed && cache.m_triangle == null))) {
+			int[] triangle = null;
+			if (explicit)
+				triangle = m_explicitWeights;
+			else if (packed)
+				triangle = ((PackedDistanceMatrix) m_distances).getTriangle();
+			new InstanceCache(m_edgeWeightType, labels, m_x, m_y, triangle)
+					.write(new File(getCacheFile()), hash);
 		}
-		m_nbVertices = lineSc.nextInt();
+	}
+
+	/**
+	 * Renumbers the vertices in the order of the Hilbert curve: the
+	 * coordinates and the labels are permuted, and the numbers in the file
+	 * are kept in {@link #m_original}.
+	 */
+	private void renumber() {
+		int[] order = HilbertCurve.order(m_x, m_y);
+		double[] x = new double[m_nbVertices];
+		double[] y = new double[m_nbVertices];
+		String[] l = new String[m_nbVertices];
+		for (int i = 0; i < m_nbVertices; i++) {
+			x[i] = m_x[order[i]];
+			y[i] = m_y[order[i]];
+			l[i] = labels[order[i]];
+		}
+		m_x = x;
+		m_y = y;
+		labels = l;
+		m_original = order;
+	}
+
+	/**
+	 * Reads a TSPLib file: the specification part, then the data sections
+	 * until EOF or the end of the file.
+	 */
+	private void parse(TSPLibParser parser) throws IOException {
+		// Specification part
+		m_nbVertices = -1;
+		m_edgeWeightType = "EUC_2D";
+		String format = "FUNCTION";
+		String line = parser.nextLine();
+		while (line != null && !line.endsWith("_SECTION")
+				&& !line.startsWith("EOF")) {
+			if (m_verbose)
+				System.err.println(line);
+			if (line.startsWith("DIMENSION")) {
+				m_nbVertices = Integer.parseInt(value(line));
+			} else if (line.startsWith("EDGE_WEIGHT_TYPE")) {
+				m_edgeWeightType = value(line);
+			} else if (line.startsWith("EDGE_WEIGHT_FORMAT")) {
+				format = value(line);
+			}
+			line = parser.nextLine();
+		}
+		if (m_nbVertices < 0)
+			throw new IOException("The instance file : " + m_fileName
+					+ " has no DIMENSION.");
 		m_x = new double[m_nbVertices];
 		m_y = new double[m_nbVertices];
 		labels = new String[m_nbVertices];
+		for (int i = 0; i < m_nbVertices; i++) {
+			labels[i] = Integer.toString(i + 1);
+		}
+
+		// Data part
+		boolean coordinates = false;
+		while (line != null && !line.startsWith("EOF")) {
+			if (m_verbose)
+				System.err.println(line);
+			if (line.startsWith("NODE_COORD_SECTION")
+					|| line.startsWith("DISPLAY_DATA_SECTION")) {
+				readCoordinates(parser);
+				coordinates = true;
+			} else if (line.startsWith("EDGE_WEIGHT_SECTION")) {
+				m_explicitWeights = readEdgeWeights(parser, format);
+			} else if (line.startsWith("FIXED_EDGES_SECTION")) {
+				// Fixed edges are not enforced, they are skipped
+				while (parser.nextInt() != -1) {
+				}
+			} else if (line.length() > 0) {
+				throw new IOException("The instance file : " + m_fileName
+						+ " has an unsupported section " + line + ".");
+			}
+			line = parser.nextLine();
+		}
 
-		do {
-			line = sc.nextLine();
-			System.err.println(line);
-		} while (!line.startsWith("NODE_COORD_SECTION"));
-		line = sc.nextLine();
+		if (m_edgeWeightType.equals("EXPLICIT")) {
+			if (m_explicitWeights == null)
+				throw new IOException("The instance file : " + m_fileName
+						+ " has no EDGE_WEIGHT_SECTION.");
+		} else if (!coordinates) {
+			throw new IOException("The instance file : " + m_fileName
+					+ " has no NODE_COORD_SECTION.");
+		}
+	}
 
+	/** Reads a NODE_COORD_SECTION or a DISPLAY_DATA_SECTION. */
+	private void readCoordinates(TSPLibParser parser) throws IOException {
 		int idx = 0;
-		while ((!line.startsWith("EOF")) && (sc.hasNext())) {
-			assert (idx < m_nbVertices);
-			// System.out.println(line);
-			lineSc = new Scanner(line);
-			lineSc.useLocale(Locale.US);
-			labels[idx] = lineSc.next();
-			m_x[idx] = lineSc.nextDouble();
-			m_y[idx] = lineSc.nextDouble();
-			line = sc.nextLine();
+		while (idx < m_nbVertices && !parser.atEnd()
+				&& !parser.nextIsKeyword()) {
+			labels[idx] = parser.nextToken();
+			m_x[idx] = parser.nextDouble();
+			m_y[idx] = parser.nextDouble();
 			idx++;
 		}
+		if (idx < m_nbVertices)
+			throw new IOException("The instance file : " + m_fileName
+					+ " gives " + idx + " coordinates for " + m_nbVertices
+					+ " vertices.");
+	}
 
-		// Create the distance matrix
-		m_distances = new long[m_nbVertices][];
-		for (int i = 0; i < m_nbVertices; i++) {
-			m_distances[i] = new long[m_nbVertices];
+	/**
+	 * Reads an EDGE_WEIGHT_SECTION.
+	 * 
+	 * @param format
+	 *            EDGE_WEIGHT_FORMAT of the file.
+	 * @return the lower triangle of the matrix, diagonal included, as stored
+	 *         by {@link PackedDistanceMatrix}.
+	 */
+	private int[] readEdgeWeights(TSPLibParser parser, String format)
+			throws IOException {
+		int n = m_nbVertices;
+		int[] triangle = new int[PackedDistanceMatrix.size(n)];
+		if (format.equals("FULL_MATRIX")) {
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < n; j++) {
+					int w = parser.nextInt();
+					if (j <= i)
+						triangle[(int) ((long) i * (i + 1) / 2) + j] = w;
+				}
+			}
+			return triangle;
 		}
 
-		// Compute distances
-		for (int i = 0; i < m_nbVertices; i++) {
-			m_distances[i][i] = 0;
-			for (int j = i + 1; j < m_nbVertices; j++) {
-				long dist = distance(i, j);
-				// System.out.println("Distance " + i + " " +j + ": " + dist);
-				m_distances[i][j] = dist;
-				m_distances[j][i] = dist;
+		// Triangular formats: a column listing of a triangle is the row
+		// listing of the other triangle.
+		boolean lower, diagonal;
+		if (format.equals("UPPER_ROW") || format.equals("LOWER_COL")) {
+			lower = false;
+			diagonal = false;
+		} else if (format.equals("LOWER_ROW") || format.equals("UPPER_COL")) {
+			lower = true;
+			diagonal = false;
+		} else if (format.equals("UPPER_DIAG_ROW")
+				|| format.equals("LOWER_DIAG_COL")) {
+			lower = false;
+			diagonal = true;
+		} else if (format.equals("LOWER_DIAG_ROW")
+				|| format.equals("UPPER_DIAG_COL")) {
+			lower = true;
+			diagonal = true;
+		} else {
+			throw new IOException("The instance file : " + m_fileName
+					+ " has an unsupported EDGE_WEIGHT_FORMAT " + format + ".");
+		}
+		for (int i = 0; i < n; i++) {
+			int first = lower ? 0 : (diagonal ? i : i + 1);
+			int last = lower ? (diagonal ? i : i - 1) : n - 1;
+			for (int j = first; j <= last; j++) {
+				int w = parser.nextInt();
+				int a = Math.max(i, j);
+				triangle[(int) ((long) a * (a + 1) / 2) + Math.min(i, j)] = w;
 			}
 		}
+		return triangle;
+	}
 
-		sc.close();
-		lineSc.close();
+	/**
+	 * @return the distance kernel for the edge weight type of the file,
+	 *         computing distances on demand (the explicit matrix for
+	 *         EXPLICIT).
+	 */
+	private DistanceMatrix createKernel() throws IOException {
+		if (m_edgeWeightType.equals("EUC_2D"))
+			return Euc2DDistanceMatrix.create(m_x, m_y);
+		if (m_edgeWeightType.equals("CEIL_2D"))
+			return new Ceil2DDistanceMatrix(m_x, m_y);
+		if (m_edgeWeightType.equals("ATT"))
+			return new AttDistanceMatrix(m_x, m_y);
+		if (m_edgeWeightType.equals("GEO"))
+			return new GeoDistanceMatrix(m_x, m_y);
+		if (m_edgeWeightType.equals("EXPLICIT"))
+			return new PackedDistanceMatrix(m_explicitWeights, m_nbVertices);
+		throw new IOException("The instance file : " + m_fileName
+				+ " has an unsupported EDGE_WEIGHT_TYPE " + m_edgeWeightType
+				+ ".");
+	}
+
+	/**
+	 * @return the value of a specification line "KEYWORD : value".
+	 */
+	private static String value(String line) {
+		return line.substring(line.indexOf(':') + 1).trim();
 	}
 
-	/** Computes the distance between two vertices */
-	private long distance(int i, int j) {
-		double dx = m_x[i] - m_x[j];
-		double dy = m_y[i] - m_y[j];
-		return (long) Math.rint(Math.hypot(dx, dy));
+	/**
+	 * @return a hash of the coordinates and of the explicit weights, used to
+	 *         check that a distance file was built for this instance.
+	 */
+	private long fingerprint() {
+		long h = 31 * m_nbVertices + m_edgeWeightType.hashCode();
+		for (int i = 0; i < m_nbVertices; i++) {
+			h = 31 * h + Double.doubleToLongBits(m_x[i]);
+			h = 31 * h + Double.doubleToLongBits(m_y[i]);
+		}
+		if (m_explicitWeights != null)
+			h = 31 * h + Arrays.hashCode(m_explicitWeights);
+		return h;
+	}
+
+	/**
+	 * @return <code>true</code> if every distance fits in an int, as the
+	 *         packed and the mapped matrices store them: the diagonal of the
+	 *         bounding box of the coordinates is below 2^31.
+	 */
+	private boolean distancesFitInt() {
+		double diagonal = Math.hypot(getMaxX() - getMinX(), getMaxY()
+				- getMinY());
+		return diagonal < Integer.MAX_VALUE;
+	}
+
+	/**
+	 * @return <code>true</code> if the packed distance matrix can be used: it
+	 *         takes less than half of the maximum memory of the JVM and every
+	 *         distance fits in an int.
+	 */
+	private boolean packedFits() {
+		if (m_nbVertices > PackedDistanceMatrix.MAX_VERTICES)
+			return false;
+		if (!distancesFitInt())
+			return false;
+		double bytes = 4.0 * PackedDistanceMatrix.size(m_nbVertices);
+		return bytes < Runtime.getRuntime().maxMemory() / 2.0;
 	}
 
 	/**
@@ -318,7 +932,7 @@ public class Instance {
 		out.println("Distance matrix:");
 		for (int i = 0; i < m_nbVertices; i++) {
 			for (int j = 0; j < m_nbVertices; j++) {
-				out.print(m_distances[i][j] + ";");
+				out.print(m_distances.get(i, j) + ";");
 			}
 			out.println();
 		}
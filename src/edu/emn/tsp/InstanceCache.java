@@ -0,0 +1,259 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Binary snapshot of a parsed instance, so that repeated runs on the same
+ * file skip the text parsing and, optionally, the distance matrix
+ * construction. <br>
+ * <br>
+ * The snapshot is identified by the SHA-256 hash of the source file: a
+ * snapshot written for another version of the file is ignored. The file
+ * contains, in this order: a magic number and a version, the hash, the
+ * number of vertices, the edge weight type, the coordinates, the labels and,
+ * optionally, the lower triangle of the distance matrix as stored by
+ * {@link PackedDistanceMatrix}.
+ */
+class InstanceCache {
+
+	/** First bytes of a snapshot file ("TSPC"). */
+	private static final int MAGIC = 0x54535043;
+
+	/** Version of the format, changed when the layout changes. */
+	private static final int VERSION = 1;
+
+	/** Size of the buffer used to read and write the file. */
+	private static final int BUFFER_SIZE = 1 << 22;
+
+	/** Edge weight type read from the source file. */
+	final String m_edgeWeightType;
+
+	/** Vertex labels. */
+	final String[] m_labels;
+
+	/** x coordinates for each customer */
+	final double[] m_x;
+
+	/** y coordinates for each customer */
+	final double[] m_y;
+
+	/** Lower triangle of the distance matrix, or null if not stored. */
+	final int[] m_triangle;
+
+	InstanceCache(String edgeWeightType, String[] labels, double[] x,
+			double[] y, int[] triangle) {
+		m_edgeWeightType = edgeWeightType;
+		m_labels = labels;
+		m_x = x;
+		m_y = y;
+		m_triangle = triangle;
+	}
+
+	/**
+	 * @return the SHA-256 hash of <code>data</code>.
+	 */
+	static byte[] hash(byte[] data) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(data);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Reads a snapshot.
+	 * 
+	 * @param file
+	 *            snapshot file.
+	 * @param hash
+	 *            hash of the source file.
+	 * @return the snapshot, or null if the file does not exist, was written
+	 *         for another source file or is truncated or damaged.
+	 * @throws IOException
+	 *             returns an error if the file cannot be read.
+	 */
+	static InstanceCache read(File file, byte[] hash) throws IOException {
+		if (!file.exists())
+			return null;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+				FileChannel channel = raf.getChannel()) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			buffer.limit(0);
+			fill(channel, buffer, 8 + hash.length);
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+				return null;
+			byte[] fileHash = new byte[hash.length];
+			buffer.get(fileHash);
+			if (!Arrays.equals(hash, fileHash))
+				return null;
+
+			fill(channel, buffer, 6);
+			int n = buffer.getInt();
+			// At least 16 bytes of coordinates and 2 of label per vertex
+			if (n < 0 || 18L * n > raf.length())
+				return null;
+			String type = readString(channel, buffer);
+			double[] x = new double[n];
+			double[] y = new double[n];
+			for (int i = 0; i < n; i++) {
+				fill(channel, buffer, 16);
+				x[i] = buffer.getDouble();
+				y[i] = buffer.getDouble();
+			}
+			String[] labels = new String[n];
+			for (int i = 0; i < n; i++) {
+				labels[i] = readString(channel, buffer);
+			}
+
+			fill(channel, buffer, 1);
+			int[] triangle = null;
+			if (buffer.get() != 0) {
+				if (n > PackedDistanceMatrix.MAX_VERTICES
+						|| 4L * PackedDistanceMatrix.size(n) > raf.length())
+					return null;
+				triangle = new int[PackedDistanceMatrix.size(n)];
+				int done = 0;
+				while (done < triangle.length) {
+					fill(channel, buffer, 4);
+					int count = Math.min(buffer.remaining() / 4,
+							triangle.length - done);
+					buffer.asIntBuffer().get(triangle, done, count);
+					buffer.position(buffer.position() + 4 * count);
+					done += count;
+				}
+			}
+			return new InstanceCache(type, labels, x, y, triangle);
+		} catch (EOFException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the snapshot. The file is written under a temporary name and then
+	 * renamed, so that a concurrent run never reads a partial file.
+	 * 
+	 * @param file
+	 *            snapshot file.
+	 * @param hash
+	 *            hash of the source file.
+	 * @throws IOException
+	 *             returns an error if the file cannot be written.
+	 */
+	void write(File file, byte[] hash) throws IOException {
+		File tmp = File.createTempFile(file.getName(), ".tmp", file
+				.getAbsoluteFile().getParentFile());
+		try {
+			try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+					FileChannel channel = raf.getChannel()) {
+				ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+				buffer.putInt(MAGIC).putInt(VERSION).put(hash);
+				buffer.putInt(m_x.length);
+				writeString(channel, buffer, m_edgeWeightType);
+				for (int i = 0; i < m_x.length; i++) {
+					reserve(channel, buffer, 16);
+					buffer.putDouble(m_x[i]).putDouble(m_y[i]);
+				}
+				for (int i = 0; i < m_labels.length; i++) {
+					writeString(channel, buffer, m_labels[i]);
+				}
+
+				reserve(channel, buffer, 1);
+				buffer.put((byte) (m_triangle != null ? 1 : 0));
+				if (m_triangle != null) {
+					int done = 0;
+					while (done < m_triangle.length) {
+						reserve(channel, buffer, 4);
+						int count = Math.min(buffer.remaining() / 4,
+								m_triangle.length - done);
+						buffer.asIntBuffer().put(m_triangle, done, count);
+						buffer.position(buffer.position() + 4 * count);
+						done += count;
+					}
+				}
+				flush(channel, buffer);
+			}
+			Files.move(tmp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	/** Reads until at least <code>bytes</code> bytes remain in the buffer. */
+	private static void fill(FileChannel channel, ByteBuffer buffer, int bytes)
+			throws IOException {
+		if (buffer.remaining() >= bytes)
+			return;
+		buffer.compact();
+		while (buffer.position() < bytes) {
+			if (channel.read(buffer) < 0)
+				throw new EOFException("Truncated instance cache file.");
+		}
+		buffer.flip();
+	}
+
+	/** Writes the buffer if it has less than <code>bytes</code> bytes left. */
+	private static void reserve(FileChannel channel, ByteBuffer buffer,
+			int bytes) throws IOException {
+		if (buffer.remaining() < bytes)
+			flush(channel, buffer);
+	}
+
+	/** Writes the content of the buffer to the channel. */
+	private static void flush(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private static String readString(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		fill(channel, buffer, 2);
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		fill(channel, buffer, bytes.length);
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeString(FileChannel channel, ByteBuffer buffer,
+			String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		reserve(channel, buffer, 2 + bytes.length);
+		buffer.putShort((short) bytes.length).put(bytes);
+	}
+
+}
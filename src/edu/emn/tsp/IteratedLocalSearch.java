@@ -0,0 +1,344 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package edu.emn.tsp;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Iterated local search around {@link LinKernighan}. <br>
+ * <br>
+ * Each iteration applies a double-bridge kick to the current tour: with
+ * three cut vertices x, y and z in tour order, the tour A B C D, where B
+ * starts after x, C after y and D after z, becomes A C B D. The kick is made
+ * of three flips. Lin-Kernighan cannot undo it easily, since it only builds
+ * moves whose intermediate steps are tours. Only the six ends of the changed
+ * edges are activated, so the descent that follows stays around the kick
+ * and costs much less than a descent from all the vertices. <br>
+ * <br>
+ * The new tour is kept or rejected by the {@link Solution.Acceptance}
+ * criterion. Every flip of the iteration, those of the kick and those of
+ * the descent, is logged, so a rejected tour is undone by applying the
+ * inverse flips in reverse order: the inverse of a flip is a flip. The cost
+ * of an iteration thus only depends on the number of flips, not on n. <br>
+ * <br>
+ * The cut vertices are either drawn at random ({@link Solution.Kick#RANDOM})
+ * or found by a short random walk on the candidate lists from a random
+ * vertex ({@link Solution.Kick#LOCAL}), so that the kick changes a small
+ * area of the plane.
+ */
+class IteratedLocalSearch {
+
+	/**
+	 * Worsening accepted by {@link Solution.Acceptance#SLIGHTLY_WORSE},
+	 * relative to the average length of an edge of the tour after the first
+	 * descent. The threshold is at least 1.
+	 */
+	static final double WORSENING = 0.5;
+
+	/** Seed of the random kicks. */
+	private static final long SEED = 0;
+
+	/** Tour being improved, with its log of flips. */
+	private final FlipLog m_log;
+
+	/** Descent run after each kick. */
+	private final LinKernighan m_search;
+
+	/** Choice of the cut vertices. */
+	private final Solution.Kick m_kick;
+
+	/** Acceptance criterion. */
+	private final Solution.Acceptance m_acceptance;
+
+	/** Largest worsening accepted, compared to the best tour. */
+	private long m_threshold;
+
+	/** Length of the tour given to the constructor. */
+	private final long m_length;
+
+	private final Random m_random = new Random(SEED);
+
+	/**
+	 * Best tour, saved only with {@link Solution.Acceptance#SLIGHTLY_WORSE},
+	 * since the current tour is the best one with the other criteria.
+	 */
+	private int[] m_best;
+
+	/** Length of the current tour minus the length of the best one. */
+	private long m_excess;
+
+	/** Number of iterations of the last run. */
+	private int m_iterations;
+
+	/**
+	 * @param tour
+	 *            tour to improve.
+	 * @param inst
+	 *            problem data.
+	 * @param k
+	 *            number of candidates per vertex.
+	 * @param kick
+	 *            choice of the cut vertices of the kicks.
+	 * @param acceptance
+	 *            acceptance criterion.
+	 * @param length
+	 *            length of the tour.
+	 * @throws Exception
+	 *             if k is not positive.
+	 */
+	IteratedLocalSearch(Tour tour, Instance inst, int k, Solution.Kick kick,
+			Solution.Acceptance acceptance, long length) throws Exception {
+		m_log = new FlipLog(tour);
+		m_search = new LinKernighan(m_log, inst, k);
+		m_kick = kick;
+		m_acceptance = acceptance;
+		m_length = length;
+	}
+
+	/**
+	 * Runs the Lin-Kernighan descent from every vertex, then the iterations
+	 * until <code>deadline</code>.
+	 * 
+	 * @param deadline
+	 *            end time, in milliseconds (see
+	 *            {@link System#currentTimeMillis()}).
+	 * @return the decrease of the tour length, from the tour given to the
+	 *         constructor to the best tour.
+	 */
+	long run(long deadline) {
+		Tour tour = m_log.m_tour;
+		int n = tour.size();
+		m_search.activateAll();
+		long gain = m_search.linKernighan();
+		// At least 1, so that the criterion differs from BETTER_OR_EQUAL
+		m_threshold = Math.max(1,
+				Math.round(WORSENING * (m_length - gain) / n));
+		m_excess = 0;
+		m_iterations = 0;
+		if (m_acceptance == Solution.Acceptance.SLIGHTLY_WORSE) {
+			m_best = new int[n + 1];
+			tour.toArray(0, m_best);
+		}
+		if (n < 8)
+			return gain;
+		m_log.m_enabled = true;
+		while (System.currentTimeMillis() < deadline) {
+			m_iterations++;
+			m_log.m_size = 0;
+			long delta = kick() - m_search.linKernighan();
+			if (!accept(delta)) {
+				m_log.undo();
+				continue;
+			}
+			m_excess += delta;
+			if (m_excess < 0) {
+				gain -= m_excess;
+				m_excess = 0;
+				if (m_best != null)
+					tour.toArray(0, m_best);
+			}
+		}
+		m_log.m_enabled = false;
+		return gain;
+	}
+
+	/**
+	 * @return <code>true</code> if the tour is kept, its length being changed
+	 *         by delta.
+	 */
+	private boolean accept(long delta) {
+		switch (m_acceptance) {
+		case BETTER:
+			return delta < 0;
+		case BETTER_OR_EQUAL:
+			return delta <= 0;
+		default:
+			return delta <= 0 || m_excess + delta <= m_threshold;
+		}
+	}
+
+	/** @return the number of iterations of the last run. */
+	int getIterations() {
+		return m_iterations;
+	}
+
+	/**
+	 * Writes the best tour in <code>route</code>, of size n+1, from vertex
+	 * <code>first</code>.
+	 */
+	void toRoute(int first, int[] route) {
+		if (m_best == null || m_excess == 0) {
+			m_log.m_tour.toArray(first, route);
+			return;
+		}
+		int n = m_best.length - 1;
+		int p = 0;
+		while (m_best[p] != first) {
+			p++;
+		}
+		for (int i = 0; i < n; i++) {
+			route[i] = m_best[(p + i) % n];
+		}
+		route[n] = first;
+	}
+
+	/**
+	 * Applies a double-bridge kick and activates the ends of the changed
+	 * edges.
+	 *
+	 * @return the increase of the tour length.
+	 */
+	private long kick() {
+		Tour tour = m_log;
+		int x, y, z;
+		do {
+			int p, q, r;
+			if (m_kick == Solution.Kick.LOCAL) {
+				p = m_random.nextInt(tour.size());
+				q = walk(p);
+				r = walk(q);
+			} else {
+				p = m_random.nextInt(tour.size());
+				q = m_random.nextInt(tour.size());
+				r = m_random.nextInt(tour.size());
+			}
+			x = p;
+			if (tour.between(p, q, r)) {
+				y = q;
+				z = r;
+			} else {
+				y = r;
+				z = q;
+			}
+			// Three distinct cut edges that are not adjacent
+		} while (x == y || y == z || z == x || tour.next(x) == y
+				|| tour.next(y) == z || tour.next(z) == x);
+
+		int t1 = x, t2 = tour.next(x), t3 = y, t4 = tour.next(y);
+		int t5 = z, t6 = tour.next(z);
+		DistanceMatrix d = m_search.m_distances;
+		long delta = d.get(t1, t4) + d.get(t5, t2) + d.get(t3, t6)
+				- d.get(t1, t2) - d.get(t3, t4) - d.get(t5, t6);
+		// A [t2..t3] [t4..t5] D becomes A [t5..t4] [t3..t2] D, then
+		// A [t4..t5] [t3..t2] D and A [t4..t5] [t2..t3] D
+		m_search.make2Opt(t1, t2, t6, t5);
+		m_search.make2Opt(t1, t5, t3, t4);
+		m_search.make2Opt(t5, t3, t6, t2);
+		m_search.activate(t1);
+		m_search.activate(t2);
+		m_search.activate(t3);
+		m_search.activate(t4);
+		m_search.activate(t5);
+		m_search.activate(t6);
+		return delta;
+	}
+
+	/** @return a vertex a few random steps away from v on the candidates. */
+	private int walk(int v) {
+		int k = m_search.m_k;
+		int steps = 1 + m_random.nextInt(3);
+		for (int i = 0; i < steps; i++) {
+			v = m_search.m_neighbors[v * k + m_random.nextInt(k)];
+		}
+		return v;
+	}
+
+	/**
+	 * {@link Tour} that logs its flips, when enabled, so that they can be
+	 * undone.
+	 */
+	private static final class FlipLog implements Tour {
+
+		/** Tour that is logged. */
+		final Tour m_tour;
+
+		/** Arguments of the flips, 4 per flip. */
+		int[] m_flips = new int[64];
+
+		/** Number of flips in the log. */
+		int m_size;
+
+		/** True if the flips are logged. */
+		boolean m_enabled;
+
+		FlipLog(Tour tour) {
+			m_tour = tour;
+		}
+
+		@Override
+		public int size() {
+			return m_tour.size();
+		}
+
+		@Override
+		public int next(int v) {
+			return m_tour.next(v);
+		}
+
+		@Override
+		public int prev(int v) {
+			return m_tour.prev(v);
+		}
+
+		@Override
+		public boolean between(int a, int b, int c) {
+			return m_tour.between(a, b, c);
+		}
+
+		@Override
+		public void flip(int a, int b, int c, int d) {
+			m_tour.flip(a, b, c, d);
+			if (!m_enabled)
+				return;
+			if (4 * m_size == m_flips.length)
+				m_flips = Arrays.copyOf(m_flips, 2 * m_flips.length);
+			int f = 4 * m_size++;
+			m_flips[f] = a;
+			m_flips[f + 1] = b;
+			m_flips[f + 2] = c;
+			m_flips[f + 3] = d;
+		}
+
+		@Override
+		public void toArray(int first, int[] route) {
+			m_tour.toArray(first, route);
+		}
+
+		/**
+		 * Undoes the logged flips, from the last one. The flip (a,b,c,d) left
+		 * the edges (a,c) and (b,d), the inverse flip replaces them by (a,b)
+		 * and (c,d).
+		 */
+		void undo() {
+			while (m_size > 0) {
+				int f = 4 * --m_size;
+				int a = m_flips[f], b = m_flips[f + 1];
+				int c = m_flips[f + 2], d = m_flips[f + 3];
+				if (m_tour.next(a) == c)
+					m_tour.flip(a, c, b, d);
+				else
+					m_tour.flip(c, a, d, b);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,369 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+import java.util.stream.IntStream;
+
+/**
+ * Two-dimensional tree over the vertex coordinates, used for nearest neighbor
+ * queries. <br>
+ * <br>
+ * The vertices are stored in the array {@link #m_perm}: each node of the tree
+ * covers a contiguous range of this array, split at the median of the
+ * coordinate with the largest spread. Leaves hold at most {@link #BUCKET}
+ * vertices. Every node keeps the bounding box of its vertices, so that a
+ * query skips the nodes that cannot contain a closer vertex. <br>
+ * <br>
+ * The order used is the Euclidean distance between the coordinates, ties
+ * being broken by vertex number. It is the order of the distances of the
+ * instance for the edge weight types that are increasing functions of the
+ * Euclidean distance (EUC_2D, CEIL_2D, ATT). <br>
+ * <br>
+ * Vertices can be removed from the tree ({@link #remove(int)}) and put back
+ * ({@link #restore(int)}), which allows to search the nearest vertex among
+ * those that remain, for example the nearest unvisited vertex when building
+ * a nearest neighbor tour. Each node counts the vertices left in its
+ * subtree, so emptied subtrees are skipped.
+ */
+class KdTree {
+
+	/** Maximum number of vertices in a leaf. */
+	private static final int BUCKET = 8;
+
+	/** x coordinates for each customer */
+	private final double[] m_x;
+
+	/** y coordinates for each customer */
+	private final double[] m_y;
+
+	/** Vertices, ordered so that each node covers a range of the array. */
+	private final int[] m_perm;
+
+	/** First index in m_perm of the vertices of each node. */
+	private final int[] m_lo;
+
+	/** Index in m_perm after the last vertex of each node. */
+	private final int[] m_hi;
+
+	/** Left child of each node, -1 for a leaf. */
+	private final int[] m_left;
+
+	/** Right child of each node, -1 for a leaf. */
+	private final int[] m_right;
+
+	/** Bounding box of each node. */
+	private final double[] m_minX, m_maxX, m_minY, m_maxY;
+
+	/** Number of nodes. */
+	private int m_nbNodes;
+
+	/** Parent of each node, -1 for the root. */
+	private final int[] m_parent;
+
+	/** Number of vertices not removed in the subtree of each node. */
+	private final int[] m_count;
+
+	/** Leaf that contains each vertex. */
+	private final int[] m_leafOf;
+
+	/** Vertices removed from the tree. */
+	private final boolean[] m_removed;
+
+	/** Best vertex found by the current nearestRemaining search. */
+	private int m_bestVertex;
+
+	/** Distance to m_bestVertex. */
+	private long m_bestDistance;
+
+	/**
+	 * Builds the tree over all the vertices, in O(n log n).
+	 * 
+	 * @param x
+	 *            x coordinates for each customer.
+	 * @param y
+	 *            y coordinates for each customer.
+	 */
+	KdTree(double[] x, double[] y) {
+		m_x = x;
+		m_y = y;
+		int n = x.length;
+		m_perm = new int[n];
+		for (int i = 0; i < n; i++) {
+			m_perm[i] = i;
+		}
+		int maxNodes = 2 * n + 1;
+		m_lo = new int[maxNodes];
+		m_hi = new int[maxNodes];
+		m_left = new int[maxNodes];
+		m_right = new int[maxNodes];
+		m_minX = new double[maxNodes];
+		m_maxX = new double[maxNodes];
+		m_minY = new double[maxNodes];
+		m_maxY = new double[maxNodes];
+		m_parent = new int[maxNodes];
+		m_count = new int[maxNodes];
+		m_leafOf = new int[n];
+		m_removed = new boolean[n];
+		m_nbNodes = 0;
+		if (n > 0)
+			build(0, n, -1);
+	}
+
+	/** Creates the node for m_perm[lo..hi) and its subtree. */
+	private int build(int lo, int hi, int parent) {
+		int node = m_nbNodes++;
+		m_lo[node] = lo;
+		m_hi[node] = hi;
+		m_parent[node] = parent;
+		m_count[node] = hi - lo;
+		double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for (int p = lo; p < hi; p++) {
+			int v = m_perm[p];
+			minX = Math.min(minX, m_x[v]);
+			maxX = Math.max(maxX, m_x[v]);
+			minY = Math.min(minY, m_y[v]);
+			maxY = Math.max(maxY, m_y[v]);
+		}
+		m_minX[node] = minX;
+		m_maxX[node] = maxX;
+		m_minY[node] = minY;
+		m_maxY[node] = maxY;
+
+		if (hi - lo <= BUCKET) {
+			m_left[node] = -1;
+			m_right[node] = -1;
+			for (int p = lo; p < hi; p++) {
+				m_leafOf[m_perm[p]] = node;
+			}
+		} else {
+			int mid = (lo + hi) >>> 1;
+			select(lo, hi, mid, maxX - minX >= maxY - minY ? m_x : m_y);
+			m_left[node] = build(lo, mid, node);
+			m_right[node] = build(mid, hi, node);
+		}
+		return node;
+	}
+
+	/**
+	 * Reorders m_perm[lo..hi) so that m_perm[k] has its final position
+	 * according to coordinate c, smaller values before and larger after
+	 * (quickselect).
+	 */
+	private void select(int lo, int hi, int k, double[] c) {
+		hi--;
+		while (hi > lo) {
+			double pivot = c[m_perm[(lo + hi) >>> 1]];
+			int i = lo, j = hi;
+			while (i <= j) {
+				while (c[m_perm[i]] < pivot)
+					i++;
+				while (c[m_perm[j]] > pivot)
+					j--;
+				if (i <= j) {
+					int tmp = m_perm[i];
+					m_perm[i] = m_perm[j];
+					m_perm[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j)
+				hi = j;
+			else if (k >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+
+	/** @return the squared distance from (qx,qy) to the box of node. */
+	private double boxDistance(int node, double qx, double qy) {
+		double dx = Math.max(0, Math.max(m_minX[node] - qx, qx - m_maxX[node]));
+		double dy = Math.max(0, Math.max(m_minY[node] - qy, qy - m_maxY[node]));
+		return dx * dx + dy * dy;
+	}
+
+	/**
+	 * Computes the k nearest neighbors of every vertex. The vertices are
+	 * processed in parallel.
+	 * 
+	 * @param k
+	 *            number of neighbors (at most n-1).
+	 * @return an array of n*k vertices: the neighbors of vertex i, from the
+	 *         nearest, are at indices i*k to i*k+k-1.
+	 */
+	int[] nearest(int k) {
+		int n = m_x.length;
+		int[] neighbors = new int[n * k];
+		IntStream.range(0, n).parallel().forEach(i -> {
+			int[] best = new int[k];
+			double[] bestDist = new double[k];
+			nearest(i, k, best, bestDist);
+			System.arraycopy(best, 0, neighbors, i * k, k);
+		});
+		return neighbors;
+	}
+
+	/**
+	 * Computes the k nearest neighbors of vertex q (q excluded).
+	 * 
+	 * @param best
+	 *            receives the neighbors, from the nearest.
+	 * @param bestDist
+	 *            receives their squared Euclidean distances to q.
+	 */
+	void nearest(int q, int k, int[] best, double[] bestDist) {
+		for (int i = 0; i < k; i++) {
+			best[i] = -1;
+			bestDist[i] = Double.POSITIVE_INFINITY;
+		}
+		search(0, q, k, best, bestDist);
+	}
+
+	private void search(int node, int q, int k, int[] best, double[] bestDist) {
+		double qx = m_x[q], qy = m_y[q];
+		if (m_left[node] < 0) {
+			for (int p = m_lo[node]; p < m_hi[node]; p++) {
+				int v = m_perm[p];
+				if (v == q)
+					continue;
+				double dx = m_x[v] - qx, dy = m_y[v] - qy;
+				double d = dx * dx + dy * dy;
+				if (d < bestDist[k - 1]
+						|| (d == bestDist[k - 1] && v < best[k - 1])) {
+					// Insertion in the sorted list of the k best
+					int i = k - 1;
+					while (i > 0
+							&& (d < bestDist[i - 1] || (d == bestDist[i - 1] && v < best[i - 1]))) {
+						best[i] = best[i - 1];
+						bestDist[i] = bestDist[i - 1];
+						i--;
+					}
+					best[i] = v;
+					bestDist[i] = d;
+				}
+			}
+			return;
+		}
+		int near = m_left[node], far = m_right[node];
+		double nearDist = boxDistance(near, qx, qy);
+		double farDist = boxDistance(far, qx, qy);
+		if (farDist < nearDist) {
+			int tmp = near;
+			near = far;
+			far = tmp;
+			double tmpDist = nearDist;
+			nearDist = farDist;
+			farDist = tmpDist;
+		}
+		if (nearDist <= bestDist[k - 1])
+			search(near, q, k, best, bestDist);
+		if (farDist <= bestDist[k - 1])
+			search(far, q, k, best, bestDist);
+	}
+
+	/**
+	 * Removes vertex v from the tree: it will not be returned by
+	 * {@link #nearestRemaining(int, DistanceMatrix, double)} anymore.
+	 */
+	void remove(int v) {
+		if (m_removed[v])
+			return;
+		m_removed[v] = true;
+		for (int node = m_leafOf[v]; node >= 0; node = m_parent[node]) {
+			m_count[node]--;
+		}
+	}
+
+	/** Puts back vertex v, removed by {@link #remove(int)}. */
+	void restore(int v) {
+		if (!m_removed[v])
+			return;
+		m_removed[v] = false;
+		for (int node = m_leafOf[v]; node >= 0; node = m_parent[node]) {
+			m_count[node]++;
+		}
+	}
+
+	/**
+	 * Searches the vertex that is not removed and minimizes the distance
+	 * <code>dist.get(q, v)</code>, the smallest vertex number among those at
+	 * the same distance. <br>
+	 * <br>
+	 * The distance must be an increasing function of the Euclidean distance
+	 * e between the coordinates, and at least <code>scale * e - 1</code>.
+	 * 
+	 * @param q
+	 *            query vertex.
+	 * @param dist
+	 *            distances of the instance.
+	 * @param scale
+	 *            ratio between the distances and the Euclidean distances (1
+	 *            for EUC_2D and CEIL_2D).
+	 * @return the nearest remaining vertex, -1 if all are removed.
+	 */
+	int nearestRemaining(int q, DistanceMatrix dist, double scale) {
+		m_bestVertex = -1;
+		m_bestDistance = Long.MAX_VALUE;
+		if (m_nbNodes > 0)
+			searchRemaining(0, q, dist, scale);
+		return m_bestVertex;
+	}
+
+	private void searchRemaining(int node, int q, DistanceMatrix dist,
+			double scale) {
+		if (m_left[node] < 0) {
+			for (int p = m_lo[node]; p < m_hi[node]; p++) {
+				int v = m_perm[p];
+				if (m_removed[v])
+					continue;
+				long d = dist.get(q, v);
+				if (d < m_bestDistance
+						|| (d == m_bestDistance && v < m_bestVertex)) {
+					m_bestDistance = d;
+					m_bestVertex = v;
+				}
+			}
+			return;
+		}
+		double qx = m_x[q], qy = m_y[q];
+		int near = m_left[node], far = m_right[node];
+		double nearDist = boxDistance(near, qx, qy);
+		double farDist = boxDistance(far, qx, qy);
+		if (farDist < nearDist) {
+			int tmp = near;
+			near = far;
+			far = tmp;
+			double tmpDist = nearDist;
+			nearDist = farDist;
+			farDist = tmpDist;
+		}
+		// A box is skipped when even its closest point is farther than the
+		// best vertex, with a margin of 1 for the rounding of the distances.
+		if (m_count[near] > 0
+				&& Math.sqrt(nearDist) * scale <= m_bestDistance + 1.0)
+			searchRemaining(near, q, dist, scale);
+		if (m_count[far] > 0
+				&& Math.sqrt(farDist) * scale <= m_bestDistance + 1.0)
+			searchRemaining(far, q, dist, scale);
+	}
+
+}
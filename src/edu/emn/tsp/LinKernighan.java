@@ -0,0 +1,222 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+/**
+ * Lin-Kernighan local search: variable depth moves made of a chain of 2-opt
+ * flips, with the candidate lists and the don't-look bits of
+ * {@link LocalSearch}. <br>
+ * <br>
+ * A move starts from an active vertex t1 and one of its tour edges (t1,t2).
+ * At each level, a candidate t3 of t2 is chosen, t4 being the neighbor of t3
+ * such that the flip replacing (t1,t2) and (t3,t4) by (t2,t3) and (t4,t1)
+ * gives a tour. The flip is applied, and the next level starts from the edge
+ * (t1,t4). The chain goes on while the gain of the removed edges minus the
+ * added ones, before closing the tour with (t4,t1), is positive. The tour of
+ * the best level is kept, the flips after it are undone. <br>
+ * <br>
+ * The candidates of a level are ranked by the length of the edge (t3,t4)
+ * minus the length of the edge (t2,t3). The {@link #BREADTH} best ones are
+ * tried at the first levels, the best one only at the next levels, up to
+ * {@link #MAX_DEPTH} flips. An edge added by the move is never removed by
+ * it, and a removed edge is never added again.
+ */
+class LinKernighan extends LocalSearch {
+
+	/** Maximum number of flips in a move. */
+	static final int MAX_DEPTH = 50;
+
+	/** Number of candidates tried at the first levels of a move. */
+	private static final int[] BREADTH = { 10, 5, 3, 2 };
+
+	/** Largest value of {@link #BREADTH}. */
+	private static final int MAX_BREADTH = 10;
+
+	/** Arguments of the make2Opt calls of the current move, 4 per flip. */
+	private final int[] m_log = new int[4 * MAX_DEPTH];
+
+	/** Number of flips of the current move. */
+	private int m_logSize;
+
+	/** Best gain of the current move. */
+	private long m_bestGain;
+
+	/** Number of flips of the current move that give m_bestGain. */
+	private int m_bestSize;
+
+	/** Candidates t3 of each level, MAX_BREADTH per level. */
+	private final int[] m_t3 = new int[MAX_BREADTH * MAX_DEPTH];
+
+	/** Vertex t4 of each candidate. */
+	private final int[] m_t4 = new int[MAX_BREADTH * MAX_DEPTH];
+
+	/** Gain after the flip of each candidate. */
+	private final long[] m_gain = new long[MAX_BREADTH * MAX_DEPTH];
+
+	/**
+	 * @param tour
+	 *            tour to improve.
+	 * @param inst
+	 *            problem data.
+	 * @param k
+	 *            number of candidates per vertex.
+	 * @throws Exception
+	 *             if k is not positive.
+	 */
+	LinKernighan(Tour tour, Instance inst, int k) throws Exception {
+		super(tour, inst, k);
+	}
+
+	/**
+	 * Lin-Kernighan descent from the active vertices.
+	 *
+	 * @return the decrease of the tour length.
+	 */
+	long linKernighan() {
+		if (m_tour.size() < 8)
+			return threeOpt();
+		long gain = 0;
+		for (int a = poll(); a >= 0; a = poll()) {
+			long g;
+			while ((g = improve(a)) > 0) {
+				gain += g;
+			}
+		}
+		return gain;
+	}
+
+	/**
+	 * Searches an improving move from t1 and applies it.
+	 *
+	 * @return the gain of the move, 0 if there is none.
+	 */
+	private long improve(int t1) {
+		for (int dir = 0; dir < 2; dir++) {
+			int t2 = dir == 0 ? m_tour.next(t1) : m_tour.prev(t1);
+			m_logSize = 0;
+			m_bestGain = 0;
+			m_bestSize = 0;
+			step(0, t1, t2, m_distances.get(t1, t2));
+			if (m_bestGain > 0) {
+				while (m_logSize > m_bestSize) {
+					undo();
+				}
+				for (int i = 0; i < 4 * m_bestSize; i++) {
+					activate(m_log[i]);
+				}
+				return m_bestGain;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Level of a move: the edge (t1,t2) is removed, g is the gain so far. On
+	 * return, either an improving tour was found (m_bestGain > 0) and the
+	 * flips are kept, or all the flips of this level were undone.
+	 */
+	private void step(int level, int t1, int t2, long g) {
+		DistanceMatrix d = m_distances;
+		m_forward = m_tour.next(t1) == t2;
+		int breadth = level < BREADTH.length ? BREADTH[level] : 1;
+		int base = level * MAX_BREADTH;
+		int count = 0;
+		int succ2 = succ(t2);
+		for (int c = t2 * m_k, end = c + m_k; c < end; c++) {
+			int t3 = m_neighbors[c];
+			long g1 = g - d.get(t2, t3);
+			if (g1 <= 0)
+				break;
+			if (t3 == t1 || t3 == succ2)
+				continue;
+			int t4 = pred(t3);
+			if (added(t3, t4) || removed(t2, t3))
+				continue;
+			long g2 = g1 + d.get(t3, t4);
+			// Insertion in the sorted list of the best candidates
+			if (count == breadth && g2 <= m_gain[base + count - 1])
+				continue;
+			int p = count < breadth ? count++ : count - 1;
+			while (p > 0 && m_gain[base + p - 1] < g2) {
+				m_t3[base + p] = m_t3[base + p - 1];
+				m_t4[base + p] = m_t4[base + p - 1];
+				m_gain[base + p] = m_gain[base + p - 1];
+				p--;
+			}
+			m_t3[base + p] = t3;
+			m_t4[base + p] = t4;
+			m_gain[base + p] = g2;
+		}
+
+		for (int i = 0; i < count; i++) {
+			int t3 = m_t3[base + i], t4 = m_t4[base + i];
+			long g2 = m_gain[base + i];
+			make2Opt(t1, t2, t3, t4);
+			int f = 4 * m_logSize++;
+			m_log[f] = t1;
+			m_log[f + 1] = t2;
+			m_log[f + 2] = t3;
+			m_log[f + 3] = t4;
+			long close = g2 - d.get(t4, t1);
+			if (close > m_bestGain) {
+				m_bestGain = close;
+				m_bestSize = m_logSize;
+			}
+			if (level + 1 < MAX_DEPTH)
+				step(level + 1, t1, t4, g2);
+			if (m_bestGain > 0)
+				return;
+			undo();
+		}
+	}
+
+	/** Undoes the last flip of the current move. */
+	private void undo() {
+		int f = 4 * --m_logSize;
+		make2Opt(m_log[f], m_log[f + 3], m_log[f + 2], m_log[f + 1]);
+	}
+
+	/** @return <code>true</code> if the current move added the edge (u,v). */
+	private boolean added(int u, int v) {
+		for (int f = 0; f < 4 * m_logSize; f += 4) {
+			int a = m_log[f + 1], b = m_log[f + 2];
+			if ((a == u && b == v) || (a == v && b == u))
+				return true;
+		}
+		return false;
+	}
+
+	/** @return <code>true</code> if the current move removed the edge (u,v). */
+	private boolean removed(int u, int v) {
+		if (m_logSize == 0)
+			return false;
+		int a = m_log[0], b = m_log[1];
+		if ((a == u && b == v) || (a == v && b == u))
+			return true;
+		for (int f = 0; f < 4 * m_logSize; f += 4) {
+			a = m_log[f + 2];
+			b = m_log[f + 3];
+			if ((a == u && b == v) || (a == v && b == u))
+				return true;
+		}
+		return false;
+	}
+
+}
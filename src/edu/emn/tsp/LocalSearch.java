@@ -0,0 +1,402 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+/**
+ * Local searches on a {@link Tour}, restricted to the candidate lists of
+ * {@link Instance#getNeighbors(int)} and driven by don't-look bits. <br>
+ * <br>
+ * A vertex is active when its don't-look bit is off. The active vertices are
+ * kept in a FIFO queue: each one is taken in turn, and the search looks for
+ * an improving move that removes one of its two tour edges and adds an edge
+ * to one of its candidates. When a move is applied, the ends of the changed
+ * edges are activated again. The search stops when the queue is empty. <br>
+ * <br>
+ * Since a new edge must be shorter than the removed edge it is paired with,
+ * the scan of a candidate list stops at the first candidate that is too far.
+ * A pass thus costs O(k) per active vertex instead of the O(n) of a full
+ * scan, plus the cost of the flips. <br>
+ * <br>
+ * The 3-opt search ({@link #threeOpt()}) builds sequential moves t1..t6 as in
+ * Lin-Kernighan: the edge (t1,t2) is replaced by (t2,t3), t3 a candidate of
+ * t2, then (t3,t4) by (t4,t5), t5 a candidate of t4, and the tour is closed
+ * by (t6,t1). The partial gain must stay positive at each step. Every
+ * reconnection is evaluated: the 2-opt move, the two 3-opt moves with a
+ * reversal, and the moves that exchange two consecutive segments (or3opt),
+ * with or without reversing them. The moves are applied as sequences of 2-opt
+ * flips.
+ */
+class LocalSearch {
+
+	/** Number of candidates per vertex used by default. */
+	static final int NEIGHBORS = 10;
+
+	/** Tour being improved. */
+	final Tour m_tour;
+
+	/** Distances of the problem. */
+	final DistanceMatrix m_distances;
+
+	/** Candidate lists, k per vertex, see {@link Instance#getNeighbors(int)}. */
+	final int[] m_neighbors;
+
+	/** Number of candidates per vertex. */
+	final int m_k;
+
+	/** Queue of the active vertices (circular). */
+	private final int[] m_queue;
+
+	/** Index of the head of the queue. */
+	private int m_head;
+
+	/** Number of vertices in the queue. */
+	private int m_queued;
+
+	/** True if the vertex is in the queue (its don't-look bit is off). */
+	private final boolean[] m_active;
+
+	/**
+	 * Orientation used by {@link #succ(int)}, {@link #pred(int)} and
+	 * {@link #sequence(int, int, int)}: true for the tour orientation.
+	 */
+	boolean m_forward;
+
+	/** Vertices t1..t6 of the best move found by {@link #improveThreeOpt}. */
+	private int m_t1, m_t2, m_t3, m_t4, m_t5, m_t6;
+
+	/** Kind of the best move, one of the MOVE_ constants. */
+	private int m_move;
+
+	/** 2-opt move t1..t4, t4 = pred(t3). */
+	private static final int MOVE_2OPT = 1;
+
+	/** 3-opt move, t4 = pred(t3), t6 chosen so that the tour is closed. */
+	private static final int MOVE_3OPT = 2;
+
+	/** 3-opt move, t4 = succ(t3), t6 = succ(t5): the segments are swapped. */
+	private static final int MOVE_OR3OPT = 3;
+
+	/**
+	 * 3-opt move, t4 = succ(t3), t6 = pred(t5): both segments are reversed.
+	 */
+	private static final int MOVE_OR3OPT_REVERSED = 4;
+
+	/**
+	 * @param tour
+	 *            tour to improve.
+	 * @param inst
+	 *            problem data.
+	 * @param k
+	 *            number of candidates per vertex.
+	 * @throws Exception
+	 *             if k is not positive.
+	 */
+	LocalSearch(Tour tour, Instance inst, int k) throws Exception {
+		int n = tour.size();
+		m_tour = tour;
+		m_distances = inst.getDistanceMatrix();
+		m_k = Math.min(k, n - 1);
+		m_neighbors = n > 1 ? inst.getNeighbors(k) : new int[0];
+		m_queue = new int[n];
+		m_active = new boolean[n];
+	}
+
+	/** @return the tour being improved. */
+	Tour getTour() {
+		return m_tour;
+	}
+
+	/** Activates every vertex, in tour order. */
+	void activateAll() {
+		int v = 0;
+		for (int i = 0; i < m_tour.size(); i++) {
+			activate(v);
+			v = m_tour.next(v);
+		}
+	}
+
+	/** Turns the don't-look bit of v off and queues it. */
+	void activate(int v) {
+		if (m_active[v])
+			return;
+		m_active[v] = true;
+		int tail = m_head + m_queued;
+		if (tail >= m_queue.length)
+			tail -= m_queue.length;
+		m_queue[tail] = v;
+		m_queued++;
+	}
+
+	/** @return the next active vertex, -1 if there is none. */
+	int poll() {
+		if (m_queued == 0)
+			return -1;
+		int v = m_queue[m_head];
+		if (++m_head == m_queue.length)
+			m_head = 0;
+		m_queued--;
+		m_active[v] = false;
+		return v;
+	}
+
+	/**
+	 * 2-opt descent from the active vertices.
+	 *
+	 * @return the decrease of the tour length.
+	 */
+	long twoOpt() {
+		if (m_tour.size() < 4)
+			return 0;
+		long gain = 0;
+		for (int a = poll(); a >= 0; a = poll()) {
+			long g;
+			while ((g = improveTwoOpt(a)) > 0) {
+				gain += g;
+			}
+		}
+		return gain;
+	}
+
+	/**
+	 * Applies the best improving 2-opt move that removes an edge of t1 and
+	 * adds an edge from t1 to one of its candidates.
+	 *
+	 * @return the gain of the move, 0 if there is none.
+	 */
+	private long improveTwoOpt(int t1) {
+		Tour tour = m_tour;
+		DistanceMatrix d = m_distances;
+		long best = 0;
+		int b1 = -1, b2 = -1, b3 = -1, b4 = -1;
+		for (int dir = 0; dir < 2; dir++) {
+			int t2 = dir == 0 ? tour.next(t1) : tour.prev(t1);
+			long d12 = d.get(t1, t2);
+			for (int c = t1 * m_k, end = c + m_k; c < end; c++) {
+				int t3 = m_neighbors[c];
+				long g1 = d12 - d.get(t1, t3);
+				if (g1 <= 0)
+					break;
+				int t4 = dir == 0 ? tour.next(t3) : tour.prev(t3);
+				if (t3 == t2 || t4 == t1)
+					continue;
+				long g = g1 + d.get(t3, t4) - d.get(t2, t4);
+				if (g > best) {
+					best = g;
+					if (dir == 0) {
+						b1 = t1;
+						b2 = t2;
+						b3 = t3;
+						b4 = t4;
+					} else {
+						b1 = t2;
+						b2 = t1;
+						b3 = t4;
+						b4 = t3;
+					}
+				}
+			}
+		}
+		if (best > 0) {
+			tour.flip(b1, b2, b3, b4);
+			activate(b1);
+			activate(b2);
+			activate(b3);
+			activate(b4);
+		}
+		return best;
+	}
+
+	/**
+	 * 3-opt descent from the active vertices. The 2-opt moves are included.
+	 *
+	 * @return the decrease of the tour length.
+	 */
+	long threeOpt() {
+		if (m_tour.size() < 5)
+			return twoOpt();
+		long gain = 0;
+		for (int a = poll(); a >= 0; a = poll()) {
+			long g;
+			while ((g = improveThreeOpt(a)) > 0) {
+				gain += g;
+			}
+		}
+		return gain;
+	}
+
+	/** @return the vertex after v, in the orientation m_forward. */
+	int succ(int v) {
+		return m_forward ? m_tour.next(v) : m_tour.prev(v);
+	}
+
+	/** @return the vertex before v, in the orientation m_forward. */
+	int pred(int v) {
+		return m_forward ? m_tour.prev(v) : m_tour.next(v);
+	}
+
+	/**
+	 * @return <code>true</code> if b is on the path from a to c, in the
+	 *         orientation m_forward.
+	 */
+	private boolean sequence(int a, int b, int c) {
+		return m_forward ? m_tour.between(a, b, c) : m_tour.between(c, b, a);
+	}
+
+	/**
+	 * Applies the best improving sequential 3-opt move (2-opt included) whose
+	 * first removed edge is an edge of t1.
+	 *
+	 * @return the gain of the move, 0 if there is none.
+	 */
+	private long improveThreeOpt(int t1) {
+		DistanceMatrix d = m_distances;
+		int k = m_k;
+		long best = 0;
+		m_move = 0;
+		for (int dir = 0; dir < 2; dir++) {
+			m_forward = dir == 0;
+			int t2 = succ(t1);
+			long g0 = d.get(t1, t2);
+			for (int c3 = t2 * k, end3 = c3 + k; c3 < end3; c3++) {
+				int t3 = m_neighbors[c3];
+				long g1 = g0 - d.get(t2, t3);
+				if (g1 <= 0)
+					break;
+				int succ3 = succ(t3), pred3 = pred(t3);
+				if (t3 == t1 || pred3 == t2)
+					continue;
+				for (int x4 = 0; x4 < 2; x4++) {
+					// x4 = 0: t4 = pred(t3), the move can be closed as a 2-opt
+					int t4 = x4 == 0 ? pred3 : succ3;
+					long g2 = g1 + d.get(t3, t4);
+					if (x4 == 0) {
+						long g = g2 - d.get(t4, t1);
+						if (g > best) {
+							best = g;
+							record(MOVE_2OPT, t1, t2, t3, t4, -1, -1);
+						}
+					}
+					for (int c5 = t4 * k, end5 = c5 + k; c5 < end5; c5++) {
+						int t5 = m_neighbors[c5];
+						long g3 = g2 - d.get(t4, t5);
+						if (g3 <= 0)
+							break;
+						if (t5 == t1 || t5 == succ(t4) || t5 == pred(t4))
+							continue;
+						if (x4 == 0) {
+							// After the 2-opt move, the path t2..t4 is
+							// reversed: t6 must follow t5 on it
+							int t6 = sequence(t2, t5, t4) ? succ(t5) : pred(t5);
+							long g = g3 + d.get(t5, t6) - d.get(t6, t1);
+							if (g > best) {
+								best = g;
+								record(MOVE_3OPT, t1, t2, t3, t4, t5, t6);
+							}
+						} else {
+							// t5 must be on the path t2..t3
+							if (!sequence(t2, t5, t3))
+								continue;
+							int t6 = succ(t5);
+							if (t6 != t4) {
+								long g = g3 + d.get(t5, t6) - d.get(t6, t1);
+								if (g > best) {
+									best = g;
+									record(MOVE_OR3OPT, t1, t2, t3, t4, t5, t6);
+								}
+							}
+							t6 = pred(t5);
+							if (t5 != t2) {
+								long g = g3 + d.get(t5, t6) - d.get(t6, t1);
+								if (g > best) {
+									best = g;
+									record(MOVE_OR3OPT_REVERSED, t1, t2, t3,
+											t4, t5, t6);
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+		if (best > 0)
+			applyBest();
+		return best;
+	}
+
+	/** Records the best move found so far. */
+	private void record(int move, int t1, int t2, int t3, int t4, int t5,
+			int t6) {
+		m_move = move;
+		m_t1 = t1;
+		m_t2 = t2;
+		m_t3 = t3;
+		m_t4 = t4;
+		m_t5 = t5;
+		m_t6 = t6;
+	}
+
+	/** Applies the recorded move and activates its vertices. */
+	private void applyBest() {
+		int t1 = m_t1, t2 = m_t2, t3 = m_t3, t4 = m_t4, t5 = m_t5, t6 = m_t6;
+		switch (m_move) {
+		case MOVE_2OPT:
+			make2Opt(t1, t2, t3, t4);
+			break;
+		case MOVE_3OPT:
+			make2Opt(t1, t2, t3, t4);
+			make2Opt(t1, t4, t5, t6);
+			break;
+		case MOVE_OR3OPT:
+			// t1 [t2..t5] [t6..t3] t4 becomes t1 [t6..t3] [t2..t5] t4
+			make2Opt(t1, t2, t6, t5);
+			make2Opt(t2, t6, t4, t3);
+			make2Opt(t1, t5, t4, t6);
+			break;
+		case MOVE_OR3OPT_REVERSED:
+			// t1 [t2..t6] [t5..t3] t4 becomes t1 [t6..t2] [t3..t5] t4
+			make2Opt(t1, t2, t5, t6);
+			make2Opt(t2, t5, t4, t3);
+			break;
+		default:
+			return;
+		}
+		activate(t1);
+		activate(t2);
+		activate(t3);
+		activate(t4);
+		if (m_move != MOVE_2OPT) {
+			activate(t5);
+			activate(t6);
+		}
+	}
+
+	/**
+	 * Replaces the edges (t1,t2) and (t3,t4) by (t2,t3) and (t4,t1). Along
+	 * one of the orientations of the tour, t2 must follow t1 and t4 precede
+	 * t3.
+	 */
+	void make2Opt(int t1, int t2, int t3, int t4) {
+		if (m_tour.next(t1) == t2)
+			m_tour.flip(t1, t2, t4, t3);
+		else
+			m_tour.flip(t2, t1, t3, t4);
+	}
+
+}
@@ -21,23 +21,24 @@ package edu.emn.tsp;
 
 import java.awt.GraphicsEnvironment;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * This class contains the Main function, that is the function that is launched
  * when the program is run.
  * 
- * DO NOT WRITE OR MODIFY THIS CLASS.
- * 
  * Read the description of the Main method below, it describes how to set some
  * parameters for the program (such as the filename of the problem to solve).
  * 
- * When the program is run, the input data file is loaded in an Instance object.
- * A TSPSolver object is then created, given the Instance object, and its solve
- * method TSPSolver::solve is called. This is where you have to code your
- * algorithms.
+ * When the program is run, the input data file is loaded in an Instance object,
+ * with the distance storage given by the options. A TSPSolver object is then
+ * created, given the Instance object and the solver options (construction of
+ * the starting tours, threads, iterated local search), and its solve method
+ * TSPSolver::solve is called. This is where you have to code your algorithms.
  * 
- * The class to be modified is TSPSolver, from where you may also create your
- * own classes.
+ * This class only parses the options and prints the result: the algorithms
+ * go in TSPSolver, from where you may also create your own classes. A new
+ * option is parsed here and passed to the Instance or to the TSPSolver.
  * 
  * @author Damien Prot, Fabien Lehuédé 2012
  * 
@@ -45,7 +46,8 @@ import java.io.IOException;
 public class Main {
 
 	/**
-	 * Main method. DO NOT MODIFY THIS METHOD.
+	 * Main method: parses the options, loads the instance, solves it and
+	 * prints the result in the format below, which must not change.
 	 * 
 	 * The parameters of the java program are described below: **command**: java
 	 * Main [options] datafile
@@ -55,6 +57,27 @@ public class Main {
 	 *  - -t (int) :maximum number of seconds given to the algorithm
 	 *  - -v : trace level (print the solution at the end if true)
 	 *  - -g : if stated, requires a graphical representation of the solution.
+	 *  - -otf : compute the distances on the fly instead of storing the
+	 * distance matrix (chosen automatically when the matrix does not fit in
+	 * memory).
+	 *  - -mmap : store the distance matrix in the file dataFile.dist, mapped
+	 * in memory. The file is built at the first run and reused afterwards.
+	 *  - -cache : load the instance from the binary snapshot dataFile.bin,
+	 * written at the first run, instead of parsing the file.
+	 *  - -check : debug mode, the local searches check the objective they
+	 * update against the recomputed cost of the route.
+	 *  - -hilbert : renumber the vertices along a Hilbert curve when the
+	 * instance is read, for the locality of the memory accesses. The solution
+	 * printed with -v uses the numbers of the file.
+	 *  - -start (name) : construction of the starting tours, one of
+	 * {@link TSPSolver.Start} in lower case (nearest by default).
+	 *  - -threads (int) : number of threads of the multi-start (the number of
+	 * processors by default).
+	 *  - -ils (name) : from 400 vertices, iterated local search instead of the
+	 * multi-start, with the acceptance criterion {@link Solution.Acceptance}
+	 * in lower case.
+	 *  - -kick (name) : cut vertices of the kicks of the iterated local
+	 * search, one of {@link Solution.Kick} in lower case (local by default).
 	 * 
 	 * **Program output**: fileName;routeLength;time;e e is an error code:
 	 *  - e =
@@ -71,6 +94,13 @@ public class Main {
 		long max_time = 60;
 		boolean verbose = false;
 		boolean graphical = false;
+		boolean cache = false;
+		boolean renumber = false;
+		TSPSolver.Start start = TSPSolver.Start.NEAREST;
+		int threads = Runtime.getRuntime().availableProcessors();
+		Solution.Acceptance acceptance = null;
+		Solution.Kick kick = Solution.Kick.LOCAL;
+		Instance.DistanceStorage storage = Instance.DistanceStorage.AUTO;
 
 		// Parse commande line
 		for (int i = 0; i < arg.length; i++) {
@@ -86,6 +116,27 @@ public class Main {
 				System.err.println("\t-v\t\t: trace level");
 				System.err
 						.println("\t-g\t\t: if stated, requires a graphical representation of the solution.");
+				System.err
+						.println("\t-otf\t: compute the distances on the fly instead of storing the distance matrix.");
+				System.err
+						.println("\t-mmap\t: store the distance matrix in the memory-mapped file dataFile.dist (built at the first run).");
+				System.err
+						.println("\t-cache\t: load the instance from the binary snapshot dataFile.bin (written at the first run).");
+				System.err
+						.println("\t-check\t: debug mode, the local searches check the objective they update.");
+				System.err
+						.println("\t-hilbert\t: renumber the vertices along a Hilbert curve, for the memory locality.");
+				System.err
+						.println("\t-start\t: construction of the starting tours, one of "
+								+ Arrays.toString(TSPSolver.Start.values()).toLowerCase() + ".");
+				System.err
+						.println("\t-threads\t: number of threads of the multi-start (int, the number of processors by default).");
+				System.err
+						.println("\t-ils\t: from 400 vertices, iterated local search instead of the multi-start, accepting the tours that are "
+								+ Arrays.toString(Solution.Acceptance.values()).toLowerCase() + ".");
+				System.err
+						.println("\t-kick\t: cut vertices of the kicks of the iterated local search, one of "
+								+ Arrays.toString(Solution.Kick.values()).toLowerCase() + ".");
 				return;
 
 			} else if (arg[i].compareTo("-v") == 0) {
@@ -100,6 +151,50 @@ public class Main {
 				}
 			} else if (arg[i].compareTo("-g") == 0) {
 				graphical = true;
+			} else if (arg[i].compareTo("-otf") == 0) {
+				storage = Instance.DistanceStorage.ON_THE_FLY;
+			} else if (arg[i].compareTo("-mmap") == 0) {
+				storage = Instance.DistanceStorage.MAPPED;
+			} else if (arg[i].compareTo("-cache") == 0) {
+				cache = true;
+			} else if (arg[i].compareTo("-check") == 0) {
+				Solution.setCheckObjective(true);
+			} else if (arg[i].compareTo("-hilbert") == 0) {
+				renumber = true;
+			} else if (arg[i].compareTo("-start") == 0) {
+				try {
+					start = TSPSolver.Start.valueOf(arg[++i].toUpperCase());
+				} catch (Exception e) {
+					System.out
+							.println("Error: The construction given for -start is not valid.");
+					System.exit(1);
+				}
+			} else if (arg[i].compareTo("-threads") == 0) {
+				try {
+					threads = Integer.parseInt(arg[++i]);
+					if (threads < 1)
+						throw new NumberFormatException();
+				} catch (Exception e) {
+					System.out
+							.println("Error: The number given for -threads is not a valid integer value.");
+					System.exit(1);
+				}
+			} else if (arg[i].compareTo("-ils") == 0) {
+				try {
+					acceptance = Solution.Acceptance.valueOf(arg[++i].toUpperCase());
+				} catch (Exception e) {
+					System.out
+							.println("Error: The acceptance criterion given for -ils is not valid.");
+					System.exit(1);
+				}
+			} else if (arg[i].compareTo("-kick") == 0) {
+				try {
+					kick = Solution.Kick.valueOf(arg[++i].toUpperCase());
+				} catch (Exception e) {
+					System.out
+							.println("Error: The kick given for -kick is not valid.");
+					System.exit(1);
+				}
 			} else {
 				if (filename != null) {
 					System.err
@@ -117,10 +212,20 @@ public class Main {
 			// Create a new problem
 			TSPSolver tsp = new TSPSolver();
 			// Read data
-			Instance prob = new Instance(filename);
+			Instance prob = new Instance(filename, storage, verbose, cache,
+					renumber);
+			if (verbose) {
+				System.err.println("Parse time: " + prob.getParseTime()
+						+ " ms, distances: " + prob.getDistanceTime() + " ms ("
+						+ prob.getDistanceStorage() + ")");
+			}
 			tsp.setInstance(prob);
 			tsp.setSolution(new Solution(prob));
 			tsp.setTime(max_time);
+			tsp.setStart(start);
+			tsp.setThreads(threads);
+			tsp.setAcceptance(acceptance);
+			tsp.setKick(kick);
 
 			// print the data [uncomment if wanted]
 			// prob.printData(System.err);
@@ -0,0 +1,172 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.stream.IntStream;
+
+/**
+ * Symmetric distance matrix stored in a memory-mapped file. <br>
+ * <br>
+ * The file contains the same lower triangle as {@link PackedDistanceMatrix},
+ * preceded by a small header: a magic number, the number of vertices and a
+ * fingerprint of the coordinates. The matrix is written once; later runs on
+ * the same instance only map the existing file. The distances live outside
+ * the java heap, so the matrix is not limited by the array size nor seen by
+ * the garbage collector, and several JVMs working on the same instance share
+ * the same pages of the system cache. <br>
+ * <br>
+ * A java buffer cannot map more than 2GB, so the triangle is split in chunks
+ * of {@link #CHUNK_SIZE} distances, each mapped separately.
+ */
+class MappedDistanceMatrix implements DistanceMatrix {
+
+	/** First bytes of a distance file ("TSPD"). */
+	private static final int MAGIC = 0x54535044;
+
+	/** Size of the header in bytes. */
+	private static final int HEADER_SIZE = 16;
+
+	/** log2 of the number of distances in a mapped chunk. */
+	private static final int CHUNK_SHIFT = 28;
+
+	/** Number of distances in a mapped chunk. */
+	private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+
+	/** Mapped chunks of the lower triangle. */
+	private final IntBuffer[] m_chunks;
+
+	/**
+	 * Maps the distance file, after building it from <code>source</code> if
+	 * it does not exist or was built for other coordinates.
+	 * 
+	 * @param file
+	 *            distance file.
+	 * @param source
+	 *            distances to store.
+	 * @param nbVertices
+	 *            number of vertices.
+	 * @param fingerprint
+	 *            identifies the coordinates the distances are computed from.
+	 * @throws IOException
+	 *             returns an error if the file cannot be written or mapped.
+	 */
+	MappedDistanceMatrix(File file, DistanceMatrix source, int nbVertices,
+			long fingerprint) throws IOException {
+		if (!isValid(file, nbVertices, fingerprint)) {
+			build(file, source, nbVertices, fingerprint);
+		}
+		long size = (long) nbVertices * (nbVertices + 1) / 2;
+		m_chunks = new IntBuffer[(int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+				FileChannel channel = raf.getChannel()) {
+			for (int c = 0; c < m_chunks.length; c++) {
+				long count = Math.min(CHUNK_SIZE, size - c * CHUNK_SIZE);
+				MappedByteBuffer buffer = channel.map(
+						FileChannel.MapMode.READ_ONLY, HEADER_SIZE + 4
+								* c * CHUNK_SIZE, 4 * count);
+				m_chunks[c] = buffer.order(ByteOrder.nativeOrder())
+						.asIntBuffer();
+			}
+		}
+	}
+
+	@Override
+	public long get(int i, int j) {
+		long a = Math.max(i, j);
+		long idx = a * (a + 1) / 2 + Math.min(i, j);
+		return m_chunks[(int) (idx >>> CHUNK_SHIFT)].get((int) (idx & (CHUNK_SIZE - 1)));
+	}
+
+	/**
+	 * @return <code>true</code> if <code>file</code> holds the distances for
+	 *         these vertices.
+	 */
+	private static boolean isValid(File file, int nbVertices, long fingerprint)
+			throws IOException {
+		if (!file.exists())
+			return false;
+		long size = (long) nbVertices * (nbVertices + 1) / 2;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			if (raf.length() != HEADER_SIZE + 4 * size)
+				return false;
+			return raf.readInt() == MAGIC && raf.readInt() == nbVertices
+					&& raf.readLong() == fingerprint;
+		}
+	}
+
+	/**
+	 * Writes the distance file. The file is written under a temporary name
+	 * and then renamed, so that another JVM never maps a partial file. The
+	 * rows are computed in parallel, on the common fork-join pool.
+	 */
+	private static void build(File file, DistanceMatrix source,
+			int nbVertices, long fingerprint) throws IOException {
+		long size = (long) nbVertices * (nbVertices + 1) / 2;
+		File tmp = File.createTempFile(file.getName(), ".tmp",
+				file.getAbsoluteFile().getParentFile());
+		try {
+			try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+					FileChannel channel = raf.getChannel()) {
+				raf.writeInt(MAGIC);
+				raf.writeInt(nbVertices);
+				raf.writeLong(fingerprint);
+				raf.setLength(HEADER_SIZE + 4 * size);
+
+				int nbChunks = (int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+				MappedByteBuffer[] buffers = new MappedByteBuffer[nbChunks];
+				IntBuffer[] chunks = new IntBuffer[nbChunks];
+				for (int c = 0; c < nbChunks; c++) {
+					long count = Math.min(CHUNK_SIZE, size - c * CHUNK_SIZE);
+					buffers[c] = channel.map(FileChannel.MapMode.READ_WRITE,
+							HEADER_SIZE + 4 * c * CHUNK_SIZE, 4 * count);
+					chunks[c] = buffers[c].order(ByteOrder.nativeOrder())
+							.asIntBuffer();
+				}
+				// Absolute puts only, so threads never share a buffer position
+				IntStream.range(0, nbVertices).parallel().forEach(i -> {
+					long idx = (long) i * (i + 1) / 2;
+					for (int j = 0; j <= i; j++, idx++) {
+						chunks[(int) (idx >>> CHUNK_SHIFT)].put(
+								(int) (idx & (CHUNK_SIZE - 1)),
+								(int) source.get(i, j));
+					}
+				});
+				for (MappedByteBuffer buffer : buffers) {
+					buffer.force();
+				}
+			}
+			Files.move(tmp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+}
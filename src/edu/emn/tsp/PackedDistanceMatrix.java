@@ -0,0 +1,115 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+import java.util.stream.IntStream;
+
+/**
+ * Symmetric distance matrix packed in a single <code>int</code> array. <br>
+ * <br>
+ * Only the lower triangle (diagonal included) is stored, row after row: the
+ * distance between i and j, with j &lt;= i, is at index
+ * <code>m_rowStart[i] + j</code>. This takes a quarter of the memory of a
+ * <code>long[n][n]</code> matrix and keeps all the distances in one
+ * contiguous block. All the rounded distances of the TSPLib instances fit in
+ * an <code>int</code>.
+ */
+class PackedDistanceMatrix implements DistanceMatrix {
+
+	/** Largest number of vertices whose triangle fits in a java array. */
+	static final int MAX_VERTICES = 65535;
+
+	/** Lower triangle of the matrix, row after row. */
+	private final int[] m_distances;
+
+	/** Index of the first element of each row in m_distances. */
+	private final int[] m_rowStart;
+
+	/**
+	 * Computes all the distances given by <code>source</code>. The rows are
+	 * computed in parallel, on the common fork-join pool.
+	 * 
+	 * @param source
+	 *            distances to store.
+	 * @param nbVertices
+	 *            number of vertices (at most {@link #MAX_VERTICES}).
+	 */
+	PackedDistanceMatrix(DistanceMatrix source, int nbVertices) {
+		m_rowStart = rowStarts(nbVertices);
+		m_distances = new int[size(nbVertices)];
+		IntStream.range(0, nbVertices).parallel().forEach(i -> {
+			int start = m_rowStart[i];
+			for (int j = 0; j < i; j++) {
+				m_distances[start + j] = (int) source.get(i, j);
+			}
+		});
+	}
+
+	/**
+	 * Uses a triangle that was already computed.
+	 * 
+	 * @param triangle
+	 *            lower triangle of the matrix, as returned by
+	 *            {@link #getTriangle()}.
+	 * @param nbVertices
+	 *            number of vertices.
+	 */
+	PackedDistanceMatrix(int[] triangle, int nbVertices) {
+		m_rowStart = rowStarts(nbVertices);
+		m_distances = triangle;
+	}
+
+	private static int[] rowStarts(int nbVertices) {
+		int[] rowStart = new int[nbVertices];
+		for (int i = 0; i < nbVertices; i++) {
+			rowStart[i] = (int) ((long) i * (i + 1) / 2);
+		}
+		return rowStart;
+	}
+
+	/** @return the lower triangle of the matrix, row after row. */
+	int[] getTriangle() {
+		return m_distances;
+	}
+
+	/**
+	 * @return number of elements stored for a problem with n vertices.
+	 */
+	static int size(int n) {
+		return (int) ((long) n * (n + 1) / 2);
+	}
+
+	@Override
+	public long get(int i, int j) {
+		return m_distances[m_rowStart[Math.max(i, j)] + Math.min(i, j)];
+	}
+
+	@Override
+	public void getRow(int i, long[] row) {
+		int start = m_rowStart[i];
+		for (int j = 0; j <= i; j++) {
+			row[j] = m_distances[start + j];
+		}
+		for (int j = i + 1; j < row.length; j++) {
+			row[j] = m_distances[m_rowStart[j] + i];
+		}
+	}
+
+}
@@ -0,0 +1,214 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Best improvement 2-opt descent on a route array, whose scan of the O(n&sup2;)
+ * pairs of edges runs on a {@link ForkJoinPool}. <br>
+ * <br>
+ * A move (i,j) replaces the edges at positions i and j of the route by
+ * reversing the vertices from position i+1 to j. Each round, the rows i of
+ * the move space are split recursively among the tasks of the pool until a
+ * task has about {@link #GRAIN} moves to evaluate, and each task stores the
+ * best move of its rows. The improving moves are then sorted by decreasing
+ * gain and selected greedily so that their ranges [i,j] are disjoint: the
+ * reversal of one leaves the four vertices of the others in place, so all of
+ * them can be applied with their evaluated gain. The rounds stop when no
+ * improving move is left. <br>
+ * <br>
+ * Only the scan is parallel: the selection and the reversals cost O(n log n)
+ * per round. Positions 0 and n are never reversed.
+ */
+class ParallelTwoOpt {
+
+	/** Number of move evaluations below which a task is not split. */
+	static final int GRAIN = 1 << 16;
+
+	/** Route, of size n+1, improved in place. */
+	private final int[] m_route;
+
+	/** Number of vertices. */
+	private final int m_n;
+
+	/** Distances of the problem. */
+	private final DistanceMatrix m_distances;
+
+	/** Pool that runs the scan. */
+	private final ForkJoinPool m_pool;
+
+	/** Length of the edge at each position of the route. */
+	private final long[] m_edge;
+
+	/** Best move of each row: position j, and its gain (0 if none). */
+	private final int[] m_bestJ;
+
+	/** Gain of the best move of each row. */
+	private final long[] m_bestGain;
+
+	/** Improving moves of a round, gain in the high bits and row i. */
+	private final long[] m_keys;
+
+	/**
+	 * @param route
+	 *            route of the {@link Solution}, with
+	 *            <code>route[n] = route[0]</code>.
+	 * @param n
+	 *            number of vertices.
+	 * @param distances
+	 *            distances of the problem, read concurrently.
+	 * @param pool
+	 *            pool that runs the scan.
+	 */
+	ParallelTwoOpt(int[] route, int n, DistanceMatrix distances,
+			ForkJoinPool pool) {
+		m_route = route;
+		m_n = n;
+		m_distances = distances;
+		m_pool = pool;
+		m_edge = new long[n];
+		m_bestJ = new int[n];
+		m_bestGain = new long[n];
+		m_keys = new long[n];
+	}
+
+	/**
+	 * Runs the descent.
+	 *
+	 * @return the decrease of the cost of the route.
+	 */
+	long twoOpt() {
+		long total = 0;
+		long gain;
+		while ((gain = round()) > 0) {
+			total += gain;
+		}
+		return total;
+	}
+
+	/**
+	 * Scans all the moves in parallel, then applies a set of non-overlapping
+	 * improving moves.
+	 *
+	 * @return the decrease of the cost of the route, 0 if it is 2-optimal.
+	 */
+	long round() {
+		int rows = m_n - 2;
+		if (rows <= 0)
+			return 0;
+		for (int p = 0; p < m_n; p++) {
+			m_edge[p] = m_distances.get(m_route[p], m_route[p + 1]);
+		}
+		m_pool.invoke(new Scan(0, rows));
+
+		int count = 0;
+		for (int i = 0; i < rows; i++) {
+			if (m_bestGain[i] > 0)
+				m_keys[count++] = (Math.min(m_bestGain[i], Integer.MAX_VALUE) << 32)
+						| i;
+		}
+		Arrays.sort(m_keys, 0, count);
+
+		// Ranges [i,j] of the selected moves, by i
+		TreeMap<Integer, Integer> selected = new TreeMap<Integer, Integer>();
+		long gain = 0;
+		for (int k = count - 1; k >= 0; k--) {
+			int i = (int) m_keys[k];
+			int j = m_bestJ[i];
+			Map.Entry<Integer, Integer> before = selected.floorEntry(j);
+			if (before != null && before.getValue() >= i)
+				continue;
+			selected.put(i, j);
+			gain += m_bestGain[i];
+		}
+		for (Map.Entry<Integer, Integer> move : selected.entrySet()) {
+			reverse(move.getKey() + 1, move.getValue());
+		}
+		return gain;
+	}
+
+	/** Reverses the route from position first to position last. */
+	private void reverse(int first, int last) {
+		for (; first < last; first++, last--) {
+			int tmp = m_route[first];
+			m_route[first] = m_route[last];
+			m_route[last] = tmp;
+		}
+	}
+
+	/** Stores the best move of the rows from lo (included) to hi. */
+	private void scanRows(int lo, int hi) {
+		int[] route = m_route;
+		long[] edge = m_edge;
+		for (int i = lo; i < hi; i++) {
+			int a = route[i], b = route[i + 1];
+			long removed = edge[i];
+			long best = 0;
+			int bestJ = -1;
+			for (int j = i + 2; j < m_n; j++) {
+				int c = route[j], d = route[j + 1];
+				long gain = removed + edge[j] - m_distances.get(a, c)
+						- m_distances.get(b, d);
+				if (gain > best) {
+					best = gain;
+					bestJ = j;
+				}
+			}
+			m_bestGain[i] = best;
+			m_bestJ[i] = bestJ;
+		}
+	}
+
+	/** Task that scans a range of rows, split until about GRAIN moves. */
+	private class Scan extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/** First row. */
+		private final int m_lo;
+
+		/** Row after the last one. */
+		private final int m_hi;
+
+		Scan(int lo, int hi) {
+			m_lo = lo;
+			m_hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			// Row i has n-2-i moves
+			long moves = (long) (m_hi - m_lo) * (2 * m_n - 3 - m_lo - m_hi) / 2;
+			if (m_hi - m_lo == 1 || moves <= GRAIN) {
+				scanRows(m_lo, m_hi);
+				return;
+			}
+			int mid = (m_lo + m_hi) >>> 1;
+			invokeAll(new Scan(m_lo, mid), new Scan(mid, m_hi));
+		}
+
+	}
+
+}
@@ -0,0 +1,64 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+/**
+ * Reverse of the candidate lists of {@link Instance#getNeighbors(int)}: for
+ * each vertex v, the vertices that have v as a candidate, stored one list
+ * after the other in a single array.
+ */
+class ReverseNeighbors {
+
+	/**
+	 * The vertices that have v as a candidate are m_list[m_start[v]] to
+	 * m_list[m_start[v+1]-1].
+	 */
+	final int[] m_list;
+
+	/** Start of the list of each vertex, n+1 values. */
+	final int[] m_start;
+
+	/**
+	 * @param neighbors
+	 *            candidate lists, k per vertex.
+	 * @param n
+	 *            number of vertices.
+	 * @param k
+	 *            number of candidates per vertex.
+	 */
+	ReverseNeighbors(int[] neighbors, int n, int k) {
+		m_start = new int[n + 1];
+		m_list = new int[n * k];
+		for (int s = 0; s < n * k; s++) {
+			m_start[neighbors[s] + 1]++;
+		}
+		for (int v = 0; v < n; v++) {
+			m_start[v + 1] += m_start[v];
+		}
+		int[] fill = new int[n];
+		for (int u = 0; u < n; u++) {
+			for (int s = u * k; s < u * k + k; s++) {
+				int v = neighbors[s];
+				m_list[m_start[v] + fill[v]++] = u;
+			}
+		}
+	}
+
+}
@@ -23,6 +23,7 @@ import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * 
@@ -85,7 +86,32 @@ import java.util.Collections;
  * Note that {@link #evaluate()} recomputes every distance from zero. If you do
  * a slight modification of the solution it is less time consuming to update
  * yourself the cost of the modified solution using the function
- * {@link #setObjective(long newval )}.
+ * {@link #setObjective(long newval )}. The local searches of this class
+ * update the objective move by move, and return <code>true</code> when they
+ * improve the route. {@link #setCheckObjective(boolean)} makes them check the
+ * updated value against {@link #evaluate()}.
+ * 
+ * **Unchecked access:**
+ * 
+ * {@link #getSolution(int)}, {@link #setVertexPosition(int, int)} and
+ * {@link Instance#getDistances(int, int)} check their arguments. For
+ * algorithms that perform many moves, {@link #getTour()} gives direct access
+ * to the route array and {@link Instance#getDistanceMatrix()} to the
+ * distances, without any check. The local searches of this class and the
+ * operators of {@link GA} use this access.
+ * 
+ * **Position index:**
+ * 
+ * {@link #getIndice(int)} and {@link #contains(int)} scan the route. After a
+ * call to {@link #usePositionIndex()}, the solution also stores the position
+ * of each vertex and answers them in constant time.
+ * 
+ * **Tour representations:**
+ * 
+ * Reversing a segment of the route array costs O(n). The local searches that
+ * work with vertices rather than positions use a {@link Tour} given by
+ * {@link #createTour()}, whose flips cost O(sqrt(n)) on large instances, and
+ * copy it back with {@link #setTour(Tour)}.
  * 
  * 
  * @author Fabien Lehuédé
@@ -93,6 +119,28 @@ import java.util.Collections;
  */
 public class Solution {
 
+	/** Choice of the cut vertices of the kicks of an iterated local search. */
+	public enum Kick {
+		/** Three vertices drawn at random. */
+		RANDOM,
+		/** Three vertices close in the plane, found on the candidate lists. */
+		LOCAL
+	}
+
+	/** Acceptance criterion of an iterated local search. */
+	public enum Acceptance {
+		/** The new tour is kept if it is shorter. */
+		BETTER,
+		/** The new tour is kept if it is not longer. */
+		BETTER_OR_EQUAL,
+		/**
+		 * The new tour is kept if it is longer than the best tour by at most
+		 * {@link IteratedLocalSearch#WORSENING} times the average length of
+		 * an edge.
+		 */
+		SLIGHTLY_WORSE
+	}
+
 	// --------------------------------------------
 	// --------------- ATTRIBUTS ------------------
 	// --------------------------------------------
@@ -115,12 +163,46 @@ public class Solution {
 	/** Data of the problem associated with the solution */
 	private Instance m_instance;
 
+	/** Distances of the problem, accessed without range checking. */
+	private DistanceMatrix m_distances;
+
 	/** Number of vertices in the problem. */
 	private int m_nbVertices;
 
 	/** Error code returned by <code>validate</code> */
 	private String m_error;
 
+	/**
+	 * Position index, <code>null</code> until {@link #usePositionIndex()} is
+	 * called. <code>m_position[v]</code> is a position of vertex v in the
+	 * route (between 0 and nbVertices-1).
+	 */
+	private int[] m_position;
+
+	/**
+	 * Number of occurrences of each vertex in the route (between 0 and
+	 * nbVertices-1), maintained with {@link #m_position}.
+	 */
+	private int[] m_count;
+
+	/**
+	 * If true, the objective maintained by the local searches is checked
+	 * against {@link #evaluate()} after each of them.
+	 */
+	private static boolean s_checkObjective = false;
+
+	/** Buffer for the segment moved by {@link #orOpt()}. */
+	private final int[] m_segment = new int[OR_OPT_MAX_LENGTH];
+
+	/**
+	 * Number of vertices from which {@link #createTour()} returns a
+	 * {@link TwoLevelTour} rather than an {@link ArrayTour}.
+	 */
+	static final int TWO_LEVEL_MIN_VERTICES = 4000;
+
+	/** Longest segment moved by {@link #orOpt()}. */
+	public static final int OR_OPT_MAX_LENGTH = 3;
+
 	// -----------------------------------------
 	// --------------- METHODS -----------------
 	// -----------------------------------------
@@ -168,6 +250,19 @@ public class Solution {
 		return m_solution[i];
 	}
 
+	/**
+	 * Returns the array that stores the route: element i is the vertex at
+	 * position i, for i from 0 to nbVertices (the last element should be
+	 * equal to the first one). <br>
+	 * <br>
+	 * This is the array of the solution, not a copy: no check is done when it
+	 * is read or modified, and neither the objective nor the position index
+	 * are updated.
+	 */
+	public int[] getTour() {
+		return m_solution;
+	}
+
 	/**
 	 * 
 	 * @return Error code returned by <code>validate</code>
@@ -189,6 +284,7 @@ public class Solution {
 
 	public Solution(Instance inst) {
 		m_instance = inst;
+		m_distances = inst.getDistanceMatrix();
 		m_nbVertices = inst.getNbVertices();
 		m_solution = new int[m_nbVertices + 1];
 	}
@@ -197,6 +293,10 @@ public class Solution {
 		Solution copie = new Solution(m_instance);
 		copie.m_solution = Arrays.copyOf(m_solution, m_nbVertices + 1);
 		copie.m_objective = m_objective;
+		if (m_position != null) {
+			copie.m_position = Arrays.copyOf(m_position, m_nbVertices);
+			copie.m_count = Arrays.copyOf(m_count, m_nbVertices);
+		}
 		return copie;
 
 	}
@@ -228,9 +328,81 @@ public class Solution {
 					"Error Instance.setVertexPosition(i,s) : vertex value s="
 							+ s + ", must range between 0 and "
 							+ (m_nbVertices - 1));
+		setVertexPositionUnchecked(s, i);
+	}
+
+	/**
+	 * {@link #setVertexPosition(int, int)} without checking the arguments. The
+	 * position index is kept up to date.
+	 */
+	void setVertexPositionUnchecked(int s, int i) {
+		if (m_position != null && i < m_nbVertices) {
+			m_count[m_solution[i]]--;
+			m_count[s]++;
+			m_position[s] = i;
+		}
 		m_solution[i] = s;
 	}
 
+	/**
+	 * Builds an index of the position of each vertex in the route, so that
+	 * {@link #getIndice(int)} and {@link #contains(int)} run in constant time
+	 * instead of scanning the route. Once built, the index is kept up to date
+	 * by the methods of this class that modify the route. It must be rebuilt,
+	 * by calling this method again, after the route is modified through
+	 * {@link #getTour()}.
+	 */
+	public void usePositionIndex() {
+		if (m_position == null) {
+			m_position = new int[m_nbVertices];
+			m_count = new int[m_nbVertices];
+		}
+		updatePositionIndex();
+	}
+
+	/** Recomputes the position index, if it is used. */
+	private void updatePositionIndex() {
+		if (m_position == null)
+			return;
+		Arrays.fill(m_count, 0);
+		for (int i = m_nbVertices - 1; i >= 0; i--) {
+			if (m_count[m_solution[i]]++ == 0)
+				m_position[m_solution[i]] = i;
+		}
+	}
+
+	/**
+	 * Returns a copy of the route as a {@link Tour}: a two-level list for the
+	 * instances of at least {@link #TWO_LEVEL_MIN_VERTICES} vertices, an
+	 * array otherwise. The route must be feasible.
+	 */
+	public Tour createTour() {
+		return createTour(m_nbVertices >= TWO_LEVEL_MIN_VERTICES);
+	}
+
+	/**
+	 * Returns a copy of the route as a {@link Tour}. The route must be
+	 * feasible.
+	 * 
+	 * @param twoLevel
+	 *            if true, a {@link TwoLevelTour}, otherwise an
+	 *            {@link ArrayTour}.
+	 */
+	public Tour createTour(boolean twoLevel) {
+		if (twoLevel)
+			return new TwoLevelTour(m_solution, m_nbVertices);
+		return new ArrayTour(m_solution, m_nbVertices);
+	}
+
+	/**
+	 * Copies <code>tour</code> into the route, which keeps its first vertex.
+	 * The position index is updated, the objective is not.
+	 */
+	public void setTour(Tour tour) {
+		tour.toArray(m_solution[0], m_solution);
+		updatePositionIndex();
+	}
+
 	/**
 	 * reverse the sequence of vertices in the solution that range between
 	 * indices firstIdx and lastIdx (both included). <br>
@@ -271,16 +443,21 @@ public class Solution {
 			}
 		}
 
+		reverseUnchecked(firstIdx, lastIdx);
+	}
+
+	/** {@link #reverse(int, int)} without checking the indices. */
+	private void reverseUnchecked(int firstIdx, int lastIdx) {
 		if (firstIdx > 0) {
-			m_objective -= m_instance.getDistances(m_solution[firstIdx - 1],
+			m_objective -= m_distances.get(m_solution[firstIdx - 1],
 					m_solution[firstIdx]);
-			m_objective += m_instance.getDistances(m_solution[firstIdx - 1],
+			m_objective += m_distances.get(m_solution[firstIdx - 1],
 					m_solution[lastIdx]);
 		}
 		if (lastIdx < m_nbVertices) {
-			m_objective -= m_instance.getDistances(m_solution[lastIdx],
+			m_objective -= m_distances.get(m_solution[lastIdx],
 					m_solution[lastIdx + 1]);
-			m_objective += m_instance.getDistances(m_solution[firstIdx],
+			m_objective += m_distances.get(m_solution[firstIdx],
 					m_solution[lastIdx + 1]);
 		}
 
@@ -291,20 +468,69 @@ public class Solution {
 			m_solution[swapfirst] = m_solution[swaplast];
 			m_solution[swaplast] = tmp;
 		}
-		this.setVertexPosition(this.getSolution(0), m_nbVertices);
+		m_solution[m_nbVertices] = m_solution[0];
+
+		if (m_position != null) {
+			if (lastIdx < m_nbVertices) {
+				for (int i = firstIdx; i <= lastIdx; i++)
+					m_position[m_solution[i]] = i;
+			} else {
+				updatePositionIndex();
+			}
+		}
 	}
 
 	/**
-	 * Recomputes the cost of the solution and return its value.
+	 * Debug mode: if <code>check</code> is true, the local searches (
+	 * {@link #deux_opt()}, {@link #orOpt()}, {@link #trois_opt()}...) check,
+	 * after each call, that the objective they updated move by move changed
+	 * by as much as the cost recomputed as in {@link #evaluate()}, and throw
+	 * an exception otherwise. This costs O(n) per call.
+	 */
+	public static void setCheckObjective(boolean check) {
+		s_checkObjective = check;
+	}
+
+	/**
+	 * In debug mode, returns the difference between the objective and the
+	 * cost of the route, before a local search.
+	 */
+	private long checkStart() {
+		return s_checkObjective ? m_objective - cost() : 0;
+	}
+
+	/**
+	 * In debug mode, checks after a local search that the objective changed
+	 * by as much as the cost of the route: <code>offset</code> is the value
+	 * returned by {@link #checkStart()} before it.
 	 * 
 	 * @throws Exception
+	 *             if they differ.
 	 */
-	public double evaluate() throws Exception {
-		m_objective = 0;
+	private void checkObjective(String operator, long offset) throws Exception {
+		if (!s_checkObjective)
+			return;
+		long cost = cost();
+		if (m_objective - cost != offset)
+			throw new Exception("Error Solution." + operator
+					+ " : the updated objective " + (m_objective - offset)
+					+ " differs from the cost of the route " + cost + ".");
+	}
+
+	/** @return the cost of the route. */
+	private long cost() {
+		long cost = 0;
 		for (int i = 0; i < m_nbVertices; i++) {
-			m_objective += m_instance.getDistances(m_solution[i],
-					m_solution[i + 1]);
+			cost += m_distances.get(m_solution[i], m_solution[i + 1]);
 		}
+		return cost;
+	}
+
+	/**
+	 * Recomputes the cost of the solution and return its value.
+	 */
+	public double evaluate() {
+		m_objective = cost();
 		return m_objective;
 	}
 
@@ -379,20 +605,33 @@ public class Solution {
 	 *            : output
 	 */
 	public void print(PrintStream out) {
+		// Numbers of the file, if the instance was renumbered
+		int[] original = m_instance.getOriginalVertices();
 		out.println("TSP solution, cost " + m_objective + ", solution :");
-		out.print(m_solution[0]);
-		for (int i = 1; i <= m_nbVertices; i++) {
-			out.print("-" + m_solution[i]);
+		for (int i = 0; i <= m_nbVertices; i++) {
+			int v = original == null ? m_solution[i] : original[m_solution[i]];
+			out.print(i == 0 ? "" + v : "-" + v);
 		}
 		out.println();
 	}
 
 	// méthode qui retourne l'indice de la ville "ville" dans la solution (utile
 	// pour le crossover2)
+	// avec l'index des positions, la reponse est immediate sauf si la ville
+	// est presente plusieurs fois
 	public int getIndice(int ville) throws Exception {
+		if (m_position != null && ville >= 0 && ville < m_nbVertices) {
+			if (m_count[ville] == 0) {
+				return 0;
+			}
+			int indice = m_position[ville];
+			if (m_count[ville] == 1 && m_solution[indice] == ville) {
+				return indice;
+			}
+		}
 		int indice = 0;
 		for (int i = 0; i < m_nbVertices; i++) {
-			if (this.getSolution(i) == ville) {
+			if (m_solution[i] == ville) {
 				indice = i;
 			}
 		}
@@ -402,8 +641,8 @@ public class Solution {
 
 	public ArrayList<Integer> chemin() throws Exception {
 		ArrayList<Integer> chem = new ArrayList();
-		for (int i = 0; i < this.m_instance.getNbVertices(); i++) {
-			chem.add(this.getSolution(i));
+		for (int i = 0; i < this.m_nbVertices; i++) {
+			chem.add(m_solution[i]);
 		}
 		return chem;
 	}
@@ -418,31 +657,30 @@ public class Solution {
 			this.plusprochevoisin(j);
 
 		} else {
-			boolean[] passage = new boolean[this.getInstance().getNbVertices()];
+			boolean[] passage = new boolean[m_nbVertices];
 
-			for (int i = 0; i < this.getInstance().getNbVertices(); i++) {
+			for (int i = 0; i < m_nbVertices; i++) {
 				passage[i] = false;
 			}
 			int i = 0;
 
-			while (i < this.getInstance().getNbVertices()) {
-				int j = (int) (Math.random() * this.getInstance()
-						.getNbVertices());
+			while (i < m_nbVertices) {
+				int j = (int) (Math.random() * m_nbVertices);
 
 				while (passage[j]) {
-					if (j == this.getInstance().getNbVertices() - 1) {
+					if (j == m_nbVertices - 1) {
 						j = 0;
 					} else {
 						j++;
 					}
 				}
 
-				this.setVertexPosition(j, i);
+				m_solution[i] = j;
 				i++;
 				passage[j] = true;
 			}
-			this.setVertexPosition(this.getSolution(0), this.getInstance()
-					.getNbVertices());
+			m_solution[m_nbVertices] = m_solution[0];
+			updatePositionIndex();
 		}
 
 		//this.VND();
@@ -452,14 +690,22 @@ public class Solution {
 	// l'optimise à l'aide
 	// du Variable Neigbourhood Descent (VND) ou Descente à Voisinage Variable
 	// (DVV) en français
+	// Pour les distances euclidiennes, la ville la plus proche non traitee
+	// est cherchee dans un KdTree dont on retire les villes visitees. A
+	// distance egale, la ville de plus petit numero est choisie, comme dans
+	// la recherche lineaire : le chemin obtenu est le meme.
 	public void plusprochevoisin(int depart) throws Exception {
+		if (m_instance.isEuclideanOrder()) {
+			plusprochevoisinKdTree(depart);
+			return;
+		}
 		// pour retracer le chemin
-		int[] chemin = new int[this.getInstance().getNbVertices()];
+		int[] chemin = new int[m_nbVertices];
 		// pour savoir si une ville a deja ete traitee
-		boolean[] traite = new boolean[this.getInstance().getNbVertices()];
+		boolean[] traite = new boolean[m_nbVertices];
 
 		// initialisations des tableaux
-		for (int i = 0; i < this.getInstance().getNbVertices(); i++) {
+		for (int i = 0; i < m_nbVertices; i++) {
 			traite[i] = false;
 			chemin[i] = 0;
 		}
@@ -470,16 +716,15 @@ public class Solution {
 		chemin[depart] = 0;
 		int cpt = 1;
 
-		while (cpt < this.getInstance().getNbVertices()) {
+		while (cpt < m_nbVertices) {
 			int suivant = 0;
 			while (traite[suivant]) {
 				suivant++;
 			}
 
-			for (int i = 0; i < this.getInstance().getNbVertices(); i++) {
+			for (int i = 0; i < m_nbVertices; i++) {
 				if (!traite[i] && i != suivant) {
-					if (this.getInstance().getDistances(precedent, i) < this
-							.getInstance().getDistances(precedent, suivant)) {
+					if (m_distances.get(precedent, i) < m_distances.get(precedent, suivant)) {
 						suivant = i;
 					}
 				}
@@ -491,74 +736,288 @@ public class Solution {
 			cpt++;
 		}
 
-		for (int i = 0; i < this.getInstance().getNbVertices(); i++) {
-			this.setVertexPosition(i, chemin[i]);
+		for (int i = 0; i < m_nbVertices; i++) {
+			m_solution[chemin[i]] = i;
+		}
+		m_solution[m_nbVertices] = depart;
+		updatePositionIndex();
+	}
+
+	// plus proche voisin en O(n log n) environ, a l'aide d'un KdTree
+	private void plusprochevoisinKdTree(int depart) throws Exception {
+		if ((depart < 0) || (depart >= m_nbVertices))
+			throw new Exception("Error Solution.plusprochevoisin : vertex "
+					+ depart + " is not valid, it should range between 0 and "
+					+ (m_nbVertices - 1));
+		KdTree arbre = new KdTree(m_instance.getXs(), m_instance.getYs());
+		DistanceMatrix distances = m_instance.getDistanceMatrix();
+		double echelle = m_instance.getEuclideanScale();
+
+		int precedent = depart;
+		arbre.remove(depart);
+		m_solution[0] = depart;
+		for (int cpt = 1; cpt < m_nbVertices; cpt++) {
+			int suivant = arbre.nearestRemaining(precedent, distances, echelle);
+			arbre.remove(suivant);
+			m_solution[cpt] = suivant;
+			precedent = suivant;
+		}
+		m_solution[m_nbVertices] = depart;
+		updatePositionIndex();
+	}
+
+	/**
+	 * Greedy edge (multi-fragment) construction: the edges are taken by
+	 * increasing length and an edge is kept if both its ends have degree
+	 * below 2 and it does not close a cycle, see {@link Fragments}. Only the
+	 * edges between a vertex and its {@link LocalSearch#NEIGHBORS} nearest
+	 * neighbors are considered, so the paths obtained are joined at the end
+	 * by linking each path to the nearest free end of another one. The
+	 * candidate edges are sorted as an array of <code>long</code>, length in
+	 * the high bits and index in the candidate lists in the low bits, which
+	 * takes O(n log n) overall for the Euclidean instances. The route starts
+	 * at vertex 0.
+	 */
+	public void greedyEdge() throws Exception {
+		int n = m_nbVertices;
+		Fragments fragments = new Fragments(n);
+		if (n > 1) {
+			int k = Math.min(LocalSearch.NEIGHBORS, n - 1);
+			int[] voisins = m_instance.getNeighbors(LocalSearch.NEIGHBORS);
+			long[] aretes = new long[n * k];
+			int nbAretes = 0;
+			for (int u = 0; u < n; u++) {
+				for (int s = u * k; s < u * k + k; s++) {
+					int v = voisins[s];
+					// Each edge once, from u if u < v or if u is not a
+					// candidate of v
+					if (v < u && isCandidate(voisins, k, v, u))
+						continue;
+					long d = Math.min(m_distances.get(u, v), Integer.MAX_VALUE);
+					aretes[nbAretes++] = (d << 32) | s;
+				}
+			}
+			Arrays.sort(aretes, 0, nbAretes);
+			for (int e = 0; e < nbAretes && fragments.getNbFragments() > 1; e++) {
+				int s = (int) aretes[e];
+				fragments.link(s / k, voisins[s]);
+			}
+		}
+		fragments.toRoute(m_instance, 0, m_solution);
+		updatePositionIndex();
+	}
+
+	/**
+	 * Clarke-Wright savings construction. A hub h is chosen, the vertex
+	 * nearest to the center of the coordinates, and every other vertex is
+	 * first on its own return trip from h. Merging the trips of i and j by
+	 * the edge (i,j) saves d(h,i) + d(h,j) - d(i,j): the pairs are merged
+	 * by decreasing saving, when i and j are the ends of two different
+	 * paths, see {@link Fragments}. Only the pairs of a vertex and one of its
+	 * {@link LocalSearch#NEIGHBORS} nearest neighbors are considered, sorted
+	 * as an array of <code>long</code>, so the construction takes
+	 * O(n log n). The paths left and the hub are then joined greedily by
+	 * their ends. The route starts at vertex 0.
+	 */
+	public void savings() throws Exception {
+		int n = m_nbVertices;
+		Fragments fragments = new Fragments(n);
+		if (n > 2) {
+			int hub = hub();
+			int k = Math.min(LocalSearch.NEIGHBORS, n - 1);
+			int[] voisins = m_instance.getNeighbors(LocalSearch.NEIGHBORS);
+			long[] gains = new long[n * k];
+			int nbGains = 0;
+			for (int u = 0; u < n; u++) {
+				if (u == hub)
+					continue;
+				long du = m_distances.get(hub, u);
+				for (int s = u * k; s < u * k + k; s++) {
+					int v = voisins[s];
+					if (v == hub || (v < u && isCandidate(voisins, k, v, u)))
+						continue;
+					long saving = du + m_distances.get(hub, v)
+							- m_distances.get(u, v);
+					// Decreasing savings, the negative ones last
+					long cle = Integer.MAX_VALUE
+							- Math.min(Math.max(saving, 0), Integer.MAX_VALUE);
+					gains[nbGains++] = (cle << 32) | s;
+				}
+			}
+			Arrays.sort(gains, 0, nbGains);
+			for (int e = 0; e < nbGains && fragments.getNbFragments() > 2; e++) {
+				int s = (int) gains[e];
+				fragments.link(s / k, voisins[s]);
+			}
 		}
-		this.setVertexPosition(depart, this.getInstance().getNbVertices());
+		fragments.toRoute(m_instance, 0, m_solution);
+		updatePositionIndex();
+	}
+
+	/** @return the vertex nearest to the center of the coordinates. */
+	private int hub() {
+		double[] x = m_instance.getXs(), y = m_instance.getYs();
+		double cx = 0, cy = 0;
+		for (int i = 0; i < m_nbVertices; i++) {
+			cx += x[i];
+			cy += y[i];
+		}
+		cx /= m_nbVertices;
+		cy /= m_nbVertices;
+		int hub = 0;
+		double best = Double.MAX_VALUE;
+		for (int i = 0; i < m_nbVertices; i++) {
+			double d = (x[i] - cx) * (x[i] - cx) + (y[i] - cy) * (y[i] - cy);
+			if (d < best) {
+				best = d;
+				hub = i;
+			}
+		}
+		return hub;
+	}
+
+	/**
+	 * Space-filling curve construction: the vertices are visited in the order
+	 * of a Hilbert curve over their coordinates (see {@link HilbertCurve}),
+	 * in O(n log n) without computing any distance. The tour is weaker than
+	 * a nearest neighbor tour, but it is built in a few milliseconds on the
+	 * largest instances. The route starts at vertex 0.
+	 */
+	public void spaceFillingCurve() throws Exception {
+		int n = m_nbVertices;
+		int[] ordre = HilbertCurve.order(m_instance.getXs(),
+				m_instance.getYs());
+		int p = 0;
+		while (ordre[p] != 0) {
+			p++;
+		}
+		for (int i = 0; i < n; i++) {
+			m_solution[i] = ordre[(p + i) % n];
+		}
+		m_solution[n] = m_solution[0];
+		updatePositionIndex();
+	}
+
+	/**
+	 * Cheapest insertion construction (see {@link Insertion}): from vertex
+	 * depart alone, the vertex whose insertion increases the length of the
+	 * tour the least is inserted, until all are. The insertion costs are kept
+	 * in a heap and only evaluated next to the {@link LocalSearch#NEIGHBORS}
+	 * nearest neighbors of each vertex. The route starts at depart.
+	 */
+	public void cheapestInsertion(int depart) throws Exception {
+		checkVertex("cheapestInsertion", depart);
+		Insertion insertion = new Insertion(m_instance, LocalSearch.NEIGHBORS);
+		insertion.cheapest(depart);
+		insertion.toRoute(depart, m_solution);
+		updatePositionIndex();
+	}
+
+	/**
+	 * Farthest insertion construction (see {@link Insertion}): from vertex
+	 * depart alone, the vertex farthest from the tour is inserted where it
+	 * increases its length the least, until all are. This takes O(n&sup2;)
+	 * distance computations. The route starts at depart.
+	 */
+	public void farthestInsertion(int depart) throws Exception {
+		checkVertex("farthestInsertion", depart);
+		Insertion insertion = new Insertion(m_instance, LocalSearch.NEIGHBORS);
+		insertion.farthest(depart);
+		insertion.toRoute(depart, m_solution);
+		updatePositionIndex();
+	}
+
+	/**
+	 * Double-tree construction: the vertices in depth-first preorder of the
+	 * minimum spanning tree rooted at vertex 0 (see {@link SpanningTree}),
+	 * that is the walk around the tree with its edges doubled, where the
+	 * vertices already visited are skipped. The tour is at most twice as
+	 * long as the optimal one when the distances satisfy the triangle
+	 * inequality. The tree is computed on the candidate lists, without the
+	 * distance matrix. The route starts at vertex 0.
+	 */
+	public void doubleTree() throws Exception {
+		SpanningTree tree = new SpanningTree(m_instance,
+				LocalSearch.NEIGHBORS, 0);
+		tree.preorder(0, m_solution);
+		updatePositionIndex();
+	}
+
+	/**
+	 * Christofides construction with a greedy matching (see
+	 * {@link Christofides}): the odd degree vertices of the minimum spanning
+	 * tree are matched greedily, and the tour follows an Eulerian circuit of
+	 * the tree and the matching, skipping the vertices already visited. The
+	 * route starts at vertex 0.
+	 */
+	public void christofides() throws Exception {
+		SpanningTree tree = new SpanningTree(m_instance,
+				LocalSearch.NEIGHBORS, 0);
+		new Christofides(m_instance, tree).toRoute(0, m_solution);
+		updatePositionIndex();
+	}
+
+	/**
+	 * @throws Exception
+	 *             if v is not a valid vertex for the given operator.
+	 */
+	private void checkVertex(String operator, int v) throws Exception {
+		if ((v < 0) || (v >= m_nbVertices))
+			throw new Exception("Error Solution." + operator + " : vertex "
+					+ v + " is not valid, it should range between 0 and "
+					+ (m_nbVertices - 1));
+	}
+
+	/** @return <code>true</code> if v is in the candidate list of u. */
+	private static boolean isCandidate(int[] voisins, int k, int u, int v) {
+		for (int s = u * k; s < u * k + k; s++) {
+			if (voisins[s] == v)
+				return true;
+		}
+		return false;
 	}
 
 	// Descente a Voisinage Variable (DVV)
+	// Le cout est calcule une fois au debut, puis mis a jour par chaque
+	// mouvement : les voisinages indiquent s'ils ont ameliore la solution.
 	public void VND() throws Exception {
-		double avant, apres;
-			do {
-				do {
-					do {
-						avant = this.evaluate();
-						this.deux_opt();
-						apres = this.evaluate();
-					} while (avant > apres);
-					avant = this.evaluate();
-					this.nodeInsertion();
-					apres = this.evaluate();
-				} while (avant > apres);
-				avant = this.evaluate();
-				this.edgeInsertion();
-				apres = this.evaluate();
-			} while (avant > apres);
+		this.evaluate();
+		do {
+			while (this.deux_opt()) {
+			}
+		} while (this.orOpt());
 	}
 	
 	public void VNDet3opt() throws Exception {
-		double avant, apres;
+		this.evaluate();
 		do {
 			do {
-				do {
-					do {
-						avant = this.evaluate();
-						this.deux_opt();
-						apres = this.evaluate();
-					} while (avant > apres);
-					avant = this.evaluate();
-					this.nodeInsertion();
-					apres = this.evaluate();
-				} while (avant > apres);
-				avant = this.evaluate();
-				this.edgeInsertion();
-				apres = this.evaluate();
-			} while (avant > apres);
-			avant = this.evaluate();
-			this.trois_opt();
-			apres = this.evaluate();
-		} while (avant > apres);
+				while (this.deux_opt()) {
+				}
+			} while (this.orOpt());
+		} while (this.trois_optVoisins());
 	}
 	
 	
-	public void trois_opt() throws Exception {
+	public boolean trois_opt() throws Exception {
 		double minchange=0;
-			for (int i=1; i<m_instance.getNbVertices()-5; i++) {
-				for (int j=i+2; j<m_instance.getNbVertices()-3; j++) {
-					for (int k=j+2; k<m_instance.getNbVertices()-1; k++) {
-						int A = this.getSolution(i);
-						int B = this.getSolution(i+1);
-						int C = this.getSolution(j);
-						int D = this.getSolution(j+1);
-						int E = this.getSolution(k);
-						int F = this.getSolution(k+1);
+		boolean improved = false;
+		long offset = checkStart();
+			for (int i=1; i<m_nbVertices-5; i++) {
+				for (int j=i+2; j<m_nbVertices-3; j++) {
+					for (int k=j+2; k<m_nbVertices-1; k++) {
+						int A = m_solution[i];
+						int B = m_solution[i+1];
+						int C = m_solution[j];
+						int D = m_solution[j+1];
+						int E = m_solution[k];
+						int F = m_solution[k+1];
 						
 						double[] change = new double[4];
-						change[0] = m_instance.getDistances(A,B)+m_instance.getDistances(C,D)+m_instance.getDistances(E,F)-m_instance.getDistances(A,D)-m_instance.getDistances(B,E)-m_instance.getDistances(F,C);				
-						change[1] = m_instance.getDistances(A,B)+m_instance.getDistances(C,D)+m_instance.getDistances(E,F)-m_instance.getDistances(A,C)-m_instance.getDistances(B,E)-m_instance.getDistances(F,D);	
-						change[2] = m_instance.getDistances(A,B)+m_instance.getDistances(C,D)+m_instance.getDistances(E,F)-m_instance.getDistances(A,E)-m_instance.getDistances(B,D)-m_instance.getDistances(F,C);				
-						change[3] = m_instance.getDistances(A,B)+m_instance.getDistances(C,D)+m_instance.getDistances(E,F)-m_instance.getDistances(A,D)-m_instance.getDistances(C,E)-m_instance.getDistances(B,F);	
+						change[0] = m_distances.get(A,B)+m_distances.get(C,D)+m_distances.get(E,F)-m_distances.get(A,D)-m_distances.get(B,E)-m_distances.get(F,C);				
+						change[1] = m_distances.get(A,B)+m_distances.get(C,D)+m_distances.get(E,F)-m_distances.get(A,C)-m_distances.get(B,E)-m_distances.get(F,D);	
+						change[2] = m_distances.get(A,B)+m_distances.get(C,D)+m_distances.get(E,F)-m_distances.get(A,E)-m_distances.get(B,D)-m_distances.get(F,C);				
+						change[3] = m_distances.get(A,B)+m_distances.get(C,D)+m_distances.get(E,F)-m_distances.get(A,D)-m_distances.get(C,E)-m_distances.get(B,F);	
 						
 						int changement=0;
 						for (int z=1; z<4; z++) {
@@ -568,140 +1027,317 @@ public class Solution {
 						}
 						
 						if (minchange<change[changement]) {
+							improved = true;
 							if (changement==0) {
-								this.reverse(i+1,j);
-								this.reverse(j+1,k);
-								this.reverse(i+1,k);
+								this.reverseUnchecked(i+1,j);
+								this.reverseUnchecked(j+1,k);
+								this.reverseUnchecked(i+1,k);
 								//System.out.println("trois opt fait // "+change);
 							}			
 							if (changement==1) {
-								this.reverse(i+1,j);
-								this.reverse(j+1,k);
+								this.reverseUnchecked(i+1,j);
+								this.reverseUnchecked(j+1,k);
 								//System.out.println("trois opt fait // "+change);
 							}
 							if (changement==2) {
-								this.reverse(i+1,j);
-								this.reverse(i+1,k);
+								this.reverseUnchecked(i+1,j);
+								this.reverseUnchecked(i+1,k);
 								//System.out.println("trois opt fait // "+change);
 							}
 							if (changement==3) {
-								this.reverse(j+1,k);
-								this.reverse(i+1,k);
+								this.reverseUnchecked(j+1,k);
+								this.reverseUnchecked(i+1,k);
 								//System.out.println("trois opt fait // "+change);
 							}
 						}
 					}
 				}
 			}
+			checkObjective("trois_opt", offset);
+			return improved;
 		} 
 
-	public void deux_opt() throws Exception {
+	public boolean deux_opt() throws Exception {
 		double minchange = 0;
-		for (int i = 0; i < this.getInstance().getNbVertices(); i++) {
-			for (int j = i + 2; j < this.getInstance().getNbVertices(); j++) {
-				int A = this.getSolution(i);
-				int B = this.getSolution(i + 1);
-				int C = this.getSolution(j);
-				int D = this.getSolution(j + 1);
-				double change = this.getInstance().getDistances(A, B)
-						+ this.getInstance().getDistances(C, D)
-						- this.getInstance().getDistances(A, C)
-						- this.getInstance().getDistances(B, D);
+		boolean improved = false;
+		long offset = checkStart();
+		for (int i = 0; i < m_nbVertices; i++) {
+			for (int j = i + 2; j < m_nbVertices; j++) {
+				int A = m_solution[i];
+				int B = m_solution[i + 1];
+				int C = m_solution[j];
+				int D = m_solution[j + 1];
+				double change = m_distances.get(A, B)
+						+ m_distances.get(C, D)
+						- m_distances.get(A, C)
+						- m_distances.get(B, D);
 				if (minchange < change) {
-					this.reverse(i + 1, j);
+					this.reverseUnchecked(i + 1, j);
+					improved = true;
 				}
 			}
 		}
+		checkObjective("deux_opt", offset);
+		return improved;
 	}
 
-	public void nodeInsertion() throws Exception {
-		double minchange = 0;
-		for (int i = 1; i < this.getInstance().getNbVertices() - 1; i++) {
-			for (int j = 0; j < this.getInstance().getNbVertices() - 1; j++) {
-				int A = this.getSolution(i - 1);
-				int AA = this.getSolution(i);
-				int AAA = this.getSolution(i + 1);
-				int BB = this.getSolution(j);
-				int BBB = this.getSolution(j + 1);
-				if (BB != AA) {
-					double change = this.getInstance().getDistances(A, AA)
-							+ this.getInstance().getDistances(AA, AAA)
-							+ this.getInstance().getDistances(BB, BBB)
-							- this.getInstance().getDistances(A, AAA)
-							- this.getInstance().getDistances(BB, AA)
-							- this.getInstance().getDistances(BBB, AA);
-					if (minchange < change) {
-						ArrayList<Integer> trajet = this.chemin();
-						trajet.remove(i);
-						if (j < i) {
-							trajet.add(j + 1, AA);
-						} else {
-							trajet.add(j, AA);
-						}
-						for (int p = 0; p < this.getInstance().getNbVertices(); p++) {
-							this.setVertexPosition(trajet.get(p), p);
-							this.setVertexPosition(trajet.get(0), this
-									.getInstance().getNbVertices());
-						}
+	/**
+	 * Best improvement 2-opt descent over all the pairs of edges, whose scan
+	 * runs on the common {@link ForkJoinPool}, see
+	 * {@link #deux_optParallele(ForkJoinPool)}.
+	 * 
+	 * @return <code>true</code> if the route was improved.
+	 */
+	public boolean deux_optParallele() throws Exception {
+		return deux_optParallele(ForkJoinPool.commonPool());
+	}
 
-					}
-				}
-			}
+	/**
+	 * Best improvement 2-opt descent over all the pairs of edges (see
+	 * {@link ParallelTwoOpt}). Each round scans the O(n&sup2;) moves on the
+	 * threads of <code>pool</code>, then applies all the improving moves
+	 * that do not overlap, the best first. The descent runs until no
+	 * improving move is left. The first vertex of the route is never moved.
+	 * 
+	 * @return <code>true</code> if the route was improved.
+	 */
+	public boolean deux_optParallele(ForkJoinPool pool) throws Exception {
+		long offset = checkStart();
+		long gain = new ParallelTwoOpt(m_solution, m_nbVertices, m_distances,
+				pool).twoOpt();
+		if (gain > 0) {
+			m_objective -= gain;
+			updatePositionIndex();
 		}
+		checkObjective("deux_optParallele", offset);
+		return gain > 0;
 	}
 
-	public void edgeInsertion() throws Exception {
-		double minchange = 0;
-		for (int i = 1; i < this.getInstance().getNbVertices() - 1; i++) {
-			for (int j = 1; j < this.getInstance().getNbVertices() - 1; j++) {
-				int A = this.getSolution(i - 1);
-				int AA = this.getSolution(i);
-				int AAA = this.getSolution(i + 1);
-				int AAAA = this.getSolution(i + 2);
-				int BB = this.getSolution(j);
-				int BBB = this.getSolution(j + 1);
-				if (BB != AA && BB != AAA && BB != A) {
-					double change = this.getInstance().getDistances(A, AA)
-							+ this.getInstance().getDistances(AAAA, AAA)
-							+ this.getInstance().getDistances(BB, BBB)
-							- this.getInstance().getDistances(A, AAAA)
-							- this.getInstance().getDistances(BB, AAA)
-							- this.getInstance().getDistances(BBB, AA);
-					if (minchange < change) {
-						ArrayList<Integer> trajet = this.chemin();
-						trajet.remove(i);
-						trajet.remove(i);
-						if (j < i) {
-							trajet.add(j + 1, AA);
-							trajet.add(j + 1, AAA);
-						} else {
-							trajet.add(j - 1, AA);
-							trajet.add(j - 1, AAA);
-							if ((j - 1) == 0) {
-								trajet.remove(trajet.size() - 1);
-								trajet.add(AAA);
-							}
-						}
-						for (int p = 0; p < trajet.size(); p++) {
-							this.setVertexPosition(trajet.get(p), p);
-						}
+	/**
+	 * 2-opt restricted to the {@link LocalSearch#NEIGHBORS} nearest neighbors
+	 * of each vertex, with don't-look bits (see {@link LocalSearch}). The
+	 * descent runs until no improving move is left, on the {@link Tour} given
+	 * by {@link #createTour()}. Unlike {@link #deux_opt()}, which scans all
+	 * the O(n&sup2;) pairs of edges at each call, a descent from a nearest
+	 * neighbor tour takes about O(n) moves evaluations plus the flips.
+	 * 
+	 * @return <code>true</code> if the route was improved.
+	 */
+	public boolean deux_optVoisins() throws Exception {
+		long offset = checkStart();
+		LocalSearch search = new LocalSearch(createTour(), m_instance,
+				LocalSearch.NEIGHBORS);
+		search.activateAll();
+		long gain = search.twoOpt();
+		if (gain > 0) {
+			setTour(search.getTour());
+			m_objective -= gain;
+		}
+		checkObjective("deux_optVoisins", offset);
+		return gain > 0;
+	}
 
+	/**
+	 * 3-opt restricted to the {@link LocalSearch#NEIGHBORS} nearest neighbors
+	 * of each vertex, with don't-look bits (see {@link LocalSearch}). All the
+	 * sequential 3-opt reconnections are evaluated, with and without segment
+	 * reversal, as well as the 2-opt moves. The descent runs until no
+	 * improving move is left. Unlike {@link #trois_opt()}, which scans the
+	 * O(n&sup3;) triples of edges, this can be used on instances of several
+	 * thousand vertices.
+	 * 
+	 * @return <code>true</code> if the route was improved.
+	 */
+	public boolean trois_optVoisins() throws Exception {
+		long offset = checkStart();
+		LocalSearch search = new LocalSearch(createTour(), m_instance,
+				LocalSearch.NEIGHBORS);
+		search.activateAll();
+		long gain = search.threeOpt();
+		if (gain > 0) {
+			setTour(search.getTour());
+			m_objective -= gain;
+		}
+		checkObjective("trois_optVoisins", offset);
+		return gain > 0;
+	}
+
+	/**
+	 * Lin-Kernighan local search (see {@link LinKernighan}): variable depth
+	 * moves restricted to the {@link LocalSearch#NEIGHBORS} nearest neighbors
+	 * of each vertex, with don't-look bits. The descent runs until no
+	 * improving move is left. This is the strongest local search of the
+	 * class.
+	 * 
+	 * @return <code>true</code> if the route was improved.
+	 */
+	public boolean linKernighan() throws Exception {
+		long offset = checkStart();
+		LinKernighan search = new LinKernighan(createTour(), m_instance,
+				LocalSearch.NEIGHBORS);
+		search.activateAll();
+		long gain = search.linKernighan();
+		if (gain > 0) {
+			setTour(search.getTour());
+			m_objective -= gain;
+		}
+		checkObjective("linKernighan", offset);
+		return gain > 0;
+	}
+
+	/**
+	 * Iterated local search (see {@link IteratedLocalSearch}): the
+	 * Lin-Kernighan descent, then double-bridge kicks, each followed by a
+	 * Lin-Kernighan descent from the vertices it touched, until
+	 * <code>fin</code>. The route is replaced by the best tour found.
+	 * 
+	 * @param fin
+	 *            end time, in milliseconds (see
+	 *            {@link System#currentTimeMillis()}).
+	 * @param kick
+	 *            choice of the cut vertices of the kicks.
+	 * @param acceptance
+	 *            criterion that keeps or rejects the tour after each kick.
+	 * @return <code>true</code> if the route was improved.
+	 */
+	public boolean iteratedLocalSearch(long fin, Kick kick,
+			Acceptance acceptance) throws Exception {
+		long offset = checkStart();
+		IteratedLocalSearch search = new IteratedLocalSearch(createTour(),
+				m_instance, LocalSearch.NEIGHBORS, kick, acceptance,
+				m_objective);
+		long gain = search.run(fin);
+		if (gain > 0) {
+			search.toRoute(m_solution[0], m_solution);
+			updatePositionIndex();
+			m_objective -= gain;
+		}
+		checkObjective("iteratedLocalSearch", offset);
+		return gain > 0;
+	}
+
+	// deplace un sommet entre deux autres (Or-opt de longueur 1)
+	public boolean nodeInsertion() throws Exception {
+		return orOpt(1, 1);
+	}
+
+	// deplace deux sommets consecutifs entre deux autres (Or-opt de
+	// longueur 2)
+	public boolean edgeInsertion() throws Exception {
+		return orOpt(2, 2);
+	}
+
+	/**
+	 * Or-opt: moves a segment of 1 to {@link #OR_OPT_MAX_LENGTH} consecutive
+	 * vertices between two other consecutive vertices, in either orientation.
+	 * Every segment and every insertion edge is tried, the first improving
+	 * move found is applied and the search goes on.
+	 * 
+	 * @return <code>true</code> if the route was improved.
+	 */
+	public boolean orOpt() throws Exception {
+		return orOpt(1, OR_OPT_MAX_LENGTH);
+	}
+
+	/**
+	 * Or-opt pass on the segments of minLength to maxLength vertices. The
+	 * first vertex of the route is never moved. The moves are applied in
+	 * place, shifting the vertices between the segment and its new position,
+	 * and the objective is updated.
+	 */
+	private boolean orOpt(int minLength, int maxLength) throws Exception {
+		boolean improved = false;
+		long offset = checkStart();
+		int n = m_nbVertices;
+		int[] route = m_solution;
+		for (int i = 1; i < n; i++) {
+			boolean moved = false;
+			for (int length = minLength; length <= maxLength && !moved; length++) {
+				int last = i + length - 1;
+				if (last >= n)
+					break;
+				int p = route[i - 1], first = route[i];
+				int end = route[last], q = route[last + 1];
+				long removed = m_distances.get(p, first)
+						+ m_distances.get(end, q) - m_distances.get(p, q);
+				if (removed <= 0)
+					continue;
+				for (int j = 0; j < n && !moved; j++) {
+					if (j == i - 1) {
+						// skip the edges of the segment and its two ends
+						j = last;
+						continue;
+					}
+					int x = route[j], y = route[j + 1];
+					long xy = m_distances.get(x, y);
+					long forward = m_distances.get(x, first)
+							+ m_distances.get(end, y) - xy;
+					long backward = m_distances.get(x, end)
+							+ m_distances.get(first, y) - xy;
+					if (forward < removed || backward < removed) {
+						boolean reversed = backward < forward;
+						moveSegment(i, length, j, reversed);
+						m_objective -= removed
+								- (reversed ? backward : forward);
+						moved = true;
 					}
 				}
 			}
+			if (moved) {
+				improved = true;
+				i--;
+			}
+		}
+		checkObjective("orOpt", offset);
+		return improved;
+	}
+
+	/**
+	 * Moves the segment of <code>length</code> vertices at position i between
+	 * the vertices at positions j and j+1, shifting the vertices in between.
+	 * The segment must not contain position 0 or nbVertices, and j must not be
+	 * between i-1 and i+length-1. The objective is not updated.
+	 * 
+	 * @param reversed
+	 *            if true, the segment is inserted in reverse order.
+	 */
+	private void moveSegment(int i, int length, int j, boolean reversed) {
+		int[] route = m_solution;
+		int[] segment = m_segment;
+		System.arraycopy(route, i, segment, 0, length);
+		int from, to;
+		if (j < i) {
+			// route[j+1..i-1] moves right
+			System.arraycopy(route, j + 1, route, j + 1 + length, i - j - 1);
+			from = j + 1;
+			to = i + length - 1;
+		} else {
+			// route[i+length..j] moves left
+			System.arraycopy(route, i + length, route, i, j - i - length + 1);
+			from = i;
+			to = j;
+		}
+		int start = j < i ? j + 1 : j - length + 1;
+		for (int k = 0; k < length; k++) {
+			route[start + k] = segment[reversed ? length - 1 - k : k];
+		}
+		if (m_position != null) {
+			for (int k = from; k <= to; k++) {
+				m_position[route[k]] = k;
+			}
 		}
 	}
 
 	// Donne l'indice de la ville la plus proche de la ville à l'indice tourPos1
 	public int villeVoisine(int tourPos1) throws Exception {
 		int tourPos2 = 0;
-		double distance = m_instance.getDistances(this.getSolution(tourPos1),
-				this.getSolution(tourPos2));
-		for (int i = 1; i < m_instance.getNbVertices(); i++) {
-			if (m_instance.getDistances(this.getSolution(i),
-					this.getSolution(tourPos1)) < distance) {
-				distance = m_instance.getDistances(this.getSolution(i),
-						this.getSolution(tourPos1));
+		double distance = m_distances.get(m_solution[tourPos1],
+				m_solution[tourPos2]);
+		for (int i = 1; i < m_nbVertices; i++) {
+			if (m_distances.get(m_solution[i],
+					m_solution[tourPos1]) < distance) {
+				distance = m_distances.get(m_solution[i],
+						m_solution[tourPos1]);
 				tourPos2 = i;
 			}
 		}
@@ -710,14 +1346,17 @@ public class Solution {
 	}
 
 	public boolean contains(int i) throws Exception {
+		if (m_position != null) {
+			return i >= 0 && i < m_nbVertices && m_count[i] > 0;
+		}
 		boolean b = false;
 		int j = 0;
 		do {
-			if (this.getSolution(j) == i) {
+			if (m_solution[j] == i) {
 				b = true;
 			}
 			j++;
-		} while (j < m_instance.getNbVertices() && b == false);
+		} while (j < m_nbVertices && b == false);
 
 		return b;
 	}
@@ -0,0 +1,204 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+/**
+ * Minimum spanning tree, computed by Prim's algorithm on the candidate
+ * graph: the edges between each vertex and its candidates of
+ * {@link Instance#getNeighbors(int)}, in both directions (see
+ * {@link ReverseNeighbors}). The distance of the vertices out of the tree is
+ * kept in an {@link IndexedHeap}, so the tree is built in O(nk log n)
+ * without the distance matrix. <br>
+ * <br>
+ * The candidate graph may not be connected, on clustered instances. When the
+ * heap is empty before all the vertices are in the tree, the shortest edge
+ * from the tree to another vertex is searched: in a {@link KdTree} that only
+ * holds the vertices out of the tree for the Euclidean instances, otherwise
+ * among all the pairs. The result is the minimum spanning tree of the
+ * candidate graph completed by these edges. On Euclidean instances, the
+ * edges of the minimum spanning tree almost always join a vertex to one of
+ * its nearest neighbors, so it is the minimum spanning tree in practice.
+ */
+class SpanningTree {
+
+	/** Number of vertices. */
+	private final int m_n;
+
+	/** Parent of each vertex, -1 for the root. */
+	private final int[] m_parent;
+
+	/**
+	 * Children of each vertex: those of v are m_children[m_childStart[v]] to
+	 * m_children[m_childStart[v+1]-1].
+	 */
+	private final int[] m_children;
+
+	/** Start of the children of each vertex, n+1 values. */
+	private final int[] m_childStart;
+
+	/**
+	 * Computes the tree.
+	 *
+	 * @param inst
+	 *            problem data.
+	 * @param k
+	 *            number of candidates per vertex.
+	 * @param root
+	 *            first vertex of the tree.
+	 */
+	SpanningTree(Instance inst, int k, int root) throws Exception {
+		int n = inst.getNbVertices();
+		m_n = n;
+		m_parent = new int[n];
+		DistanceMatrix distances = inst.getDistanceMatrix();
+		k = Math.min(k, n - 1);
+		int[] neighbors = n > 1 ? inst.getNeighbors(k) : new int[0];
+		ReverseNeighbors reverse = new ReverseNeighbors(neighbors, n, k);
+		KdTree outside = inst.isEuclideanOrder() ? new KdTree(inst.getXs(),
+				inst.getYs()) : null;
+
+		IndexedHeap heap = new IndexedHeap(n);
+		long[] key = new long[n];
+		boolean[] inTree = new boolean[n];
+		// Vertices of the tree, in the order of their addition
+		int[] order = new int[n];
+		for (int v = 0; v < n; v++) {
+			key[v] = Long.MAX_VALUE;
+			m_parent[v] = -1;
+		}
+		heap.set(root, 0);
+		key[root] = 0;
+		int count = 0;
+		while (count < n) {
+			if (heap.isEmpty())
+				reconnect(inst, distances, outside, inTree, order, count, heap,
+						key);
+			int u = heap.poll();
+			inTree[u] = true;
+			order[count++] = u;
+			if (outside != null)
+				outside.remove(u);
+			for (int s = u * k; s < u * k + k; s++) {
+				relax(u, neighbors[s], distances, inTree, heap, key);
+			}
+			for (int r = reverse.m_start[u]; r < reverse.m_start[u + 1]; r++) {
+				relax(u, reverse.m_list[r], distances, inTree, heap, key);
+			}
+		}
+
+		// Children lists
+		m_childStart = new int[n + 1];
+		m_children = new int[Math.max(0, n - 1)];
+		for (int v = 0; v < n; v++) {
+			if (m_parent[v] >= 0)
+				m_childStart[m_parent[v] + 1]++;
+		}
+		for (int v = 0; v < n; v++) {
+			m_childStart[v + 1] += m_childStart[v];
+		}
+		int[] fill = new int[n];
+		for (int i = 0; i < n; i++) {
+			// Children in the order of their addition to the tree
+			int v = order[i];
+			if (m_parent[v] >= 0)
+				m_children[m_childStart[m_parent[v]] + fill[m_parent[v]]++] = v;
+		}
+	}
+
+	/** Updates the distance of v to the tree with the edge (u,v). */
+	private void relax(int u, int v, DistanceMatrix distances,
+			boolean[] inTree, IndexedHeap heap, long[] key) {
+		if (inTree[v])
+			return;
+		long d = distances.get(u, v);
+		if (d < key[v]) {
+			key[v] = d;
+			m_parent[v] = u;
+			heap.set(v, d);
+		}
+	}
+
+	/**
+	 * Puts in the heap the vertex out of the tree that is nearest to the
+	 * tree, with its parent.
+	 */
+	private void reconnect(Instance inst, DistanceMatrix distances,
+			KdTree outside, boolean[] inTree, int[] order, int count,
+			IndexedHeap heap, long[] key) {
+		long best = Long.MAX_VALUE;
+		int bestU = -1, bestV = -1;
+		double scale = inst.getEuclideanScale();
+		for (int i = 0; i < count; i++) {
+			int u = order[i];
+			if (outside != null) {
+				int v = outside.nearestRemaining(u, distances, scale);
+				long d = distances.get(u, v);
+				if (d < best) {
+					best = d;
+					bestU = u;
+					bestV = v;
+				}
+			} else {
+				for (int v = 0; v < m_n; v++) {
+					if (inTree[v])
+						continue;
+					long d = distances.get(u, v);
+					if (d < best) {
+						best = d;
+						bestU = u;
+						bestV = v;
+					}
+				}
+			}
+		}
+		key[bestV] = best;
+		m_parent[bestV] = bestU;
+		heap.set(bestV, best);
+	}
+
+	/** @return the parent of v, -1 for the root. */
+	int getParent(int v) {
+		return m_parent[v];
+	}
+
+	/**
+	 * Writes in <code>route</code>, of size n+1, the vertices in depth-first
+	 * preorder from <code>root</code>, the root of the tree: this is the
+	 * tour around the tree with every edge doubled, in which the vertices
+	 * already visited are skipped.
+	 */
+	void preorder(int root, int[] route) {
+		int n = m_n;
+		int[] stack = new int[n];
+		int top = 0;
+		stack[top++] = root;
+		int count = 0;
+		while (top > 0) {
+			int v = stack[--top];
+			route[count++] = v;
+			// Pushed in reverse order, so that the first child is visited first
+			for (int c = m_childStart[v + 1] - 1; c >= m_childStart[v]; c--) {
+				stack[top++] = m_children[c];
+			}
+		}
+		route[n] = root;
+	}
+
+}
@@ -0,0 +1,257 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the content of a TSPLib file. <br>
+ * <br>
+ * The whole file is loaded in a byte array and the numbers are parsed
+ * directly from the bytes, without creating any intermediate String or
+ * Scanner. The specification lines of the header can be read as Strings with
+ * {@link #nextLine()}, the data sections are read token by token with
+ * {@link #nextInt()}, {@link #nextDouble()} and {@link #nextToken()}.
+ */
+class TSPLibParser {
+
+	/** Exact powers of ten representable as a double. */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+			1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+			1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/** Content of the file. */
+	private final byte[] m_data;
+
+	/** Current position in m_data. */
+	private int m_pos;
+
+	/** Name of the file, for error messages. */
+	private final String m_fileName;
+
+	/**
+	 * @param data
+	 *            content of the file.
+	 * @param fileName
+	 *            name of the file, for error messages.
+	 */
+	TSPLibParser(byte[] data, String fileName) {
+		m_data = data;
+		m_fileName = fileName;
+		m_pos = 0;
+	}
+
+	/**
+	 * @return the next line without its end of line and surrounding blanks,
+	 *         or <code>null</code> at the end of the file.
+	 */
+	String nextLine() {
+		if (m_pos >= m_data.length)
+			return null;
+		int start = m_pos;
+		while (m_pos < m_data.length && m_data[m_pos] != '\n') {
+			m_pos++;
+		}
+		int end = m_pos;
+		if (m_pos < m_data.length)
+			m_pos++;
+		return new String(m_data, start, end - start, StandardCharsets.ISO_8859_1)
+				.trim();
+	}
+
+	/**
+	 * @return <code>true</code> if there is no token left in the file.
+	 */
+	boolean atEnd() {
+		skipBlanks();
+		return m_pos >= m_data.length;
+	}
+
+	/**
+	 * @return <code>true</code> if the next token starts with a letter, that
+	 *         is a keyword (such as EOF or a section name) and not a number.
+	 */
+	boolean nextIsKeyword() {
+		skipBlanks();
+		if (m_pos >= m_data.length)
+			return false;
+		byte b = m_data[m_pos];
+		return (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z');
+	}
+
+	/**
+	 * @return the next token, delimited by blanks.
+	 * @throws IOException
+	 *             returns an error at the end of the file.
+	 */
+	String nextToken() throws IOException {
+		skipBlanks();
+		int start = m_pos;
+		while (m_pos < m_data.length && !isBlank(m_data[m_pos])) {
+			m_pos++;
+		}
+		if (start == m_pos)
+			throw error("unexpected end of file");
+		return new String(m_data, start, m_pos - start,
+				StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * @return the next token as an integer.
+	 * @throws IOException
+	 *             returns an error if the next token is not an integer.
+	 */
+	int nextInt() throws IOException {
+		skipBlanks();
+		int start = m_pos;
+		boolean negative = false;
+		if (m_pos < m_data.length
+				&& (m_data[m_pos] == '-' || m_data[m_pos] == '+')) {
+			negative = m_data[m_pos] == '-';
+			m_pos++;
+		}
+		long value = 0;
+		int digits = 0;
+		while (m_pos < m_data.length && isDigit(m_data[m_pos])) {
+			value = 10 * value + (m_data[m_pos] - '0');
+			m_pos++;
+			digits++;
+		}
+		if (digits == 0 || digits > 10 || value > Integer.MAX_VALUE
+				|| (m_pos < m_data.length && !isBlank(m_data[m_pos]))) {
+			m_pos = start;
+			throw error("integer expected, found " + nextToken());
+		}
+		return (int) (negative ? -value : value);
+	}
+
+	/**
+	 * Parses the next token as a decimal number, possibly in scientific
+	 * notation (for example 8.37000e+02). The result is the same as
+	 * {@link Double#parseDouble(String)}: numbers with at most 15 significant
+	 * digits and small exponents are computed exactly from the digits, the
+	 * others are given to {@link Double#parseDouble(String)}.
+	 * 
+	 * @return the next token as a double.
+	 * @throws IOException
+	 *             returns an error if the next token is not a number.
+	 */
+	double nextDouble() throws IOException {
+		skipBlanks();
+		int start = m_pos;
+		boolean negative = false;
+		if (m_pos < m_data.length
+				&& (m_data[m_pos] == '-' || m_data[m_pos] == '+')) {
+			negative = m_data[m_pos] == '-';
+			m_pos++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean any = false;
+		while (m_pos < m_data.length && isDigit(m_data[m_pos])) {
+			if (mantissa != 0 || m_data[m_pos] != '0')
+				digits++;
+			if (digits <= 18)
+				mantissa = 10 * mantissa + (m_data[m_pos] - '0');
+			else
+				exponent++;
+			m_pos++;
+			any = true;
+		}
+		if (m_pos < m_data.length && m_data[m_pos] == '.') {
+			m_pos++;
+			while (m_pos < m_data.length && isDigit(m_data[m_pos])) {
+				if (mantissa != 0 || m_data[m_pos] != '0')
+					digits++;
+				if (digits <= 18) {
+					mantissa = 10 * mantissa + (m_data[m_pos] - '0');
+					exponent--;
+				}
+				m_pos++;
+				any = true;
+			}
+		}
+		if (any && m_pos < m_data.length
+				&& (m_data[m_pos] == 'e' || m_data[m_pos] == 'E')) {
+			m_pos++;
+			boolean negativeExp = false;
+			if (m_pos < m_data.length
+					&& (m_data[m_pos] == '-' || m_data[m_pos] == '+')) {
+				negativeExp = m_data[m_pos] == '-';
+				m_pos++;
+			}
+			int exp = 0;
+			boolean expDigits = false;
+			while (m_pos < m_data.length && isDigit(m_data[m_pos])) {
+				if (exp < 100000)
+					exp = 10 * exp + (m_data[m_pos] - '0');
+				m_pos++;
+				expDigits = true;
+			}
+			if (!expDigits)
+				any = false;
+			exponent += negativeExp ? -exp : exp;
+		}
+		if (!any || (m_pos < m_data.length && !isBlank(m_data[m_pos]))) {
+			m_pos = start;
+			throw error("number expected, found " + nextToken());
+		}
+
+		double value;
+		if (digits <= 15 && exponent >= -22 && exponent <= 22) {
+			// Both the mantissa and the power of ten are exact doubles, so
+			// the product (or quotient) is correctly rounded.
+			value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent]
+					: mantissa / POWERS_OF_TEN[-exponent];
+			return negative ? -value : value;
+		}
+		return Double.parseDouble(new String(m_data, start, m_pos - start,
+				StandardCharsets.ISO_8859_1));
+	}
+
+	/** Skips blanks and end of lines. */
+	private void skipBlanks() {
+		while (m_pos < m_data.length && isBlank(m_data[m_pos])) {
+			m_pos++;
+		}
+	}
+
+	private static boolean isBlank(byte b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	/** @return an error located in the file. */
+	private IOException error(String message) {
+		int line = 1;
+		for (int i = 0; i < m_pos && i < m_data.length; i++) {
+			if (m_data[i] == '\n')
+				line++;
+		}
+		return new IOException("The instance file : " + m_fileName
+				+ ", line " + line + ": " + message + ".");
+	}
+
+}
@@ -20,6 +20,15 @@
 package edu.emn.tsp;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 
@@ -41,6 +50,29 @@ import java.util.ArrayList;
  */
 public class TSPSolver {
 
+	/**
+	 * The constructions that can give the starting tours, see
+	 * {@link #construct(int)}.
+	 */
+	public enum Start {
+		/** {@link Solution#plusprochevoisin(int)}, from each vertex in turn. */
+		NEAREST,
+		/** {@link Solution#greedyEdge()}. */
+		GREEDY,
+		/** {@link Solution#spaceFillingCurve()}. */
+		CURVE,
+		/** {@link Solution#cheapestInsertion(int)}, from each vertex in turn. */
+		CHEAPEST,
+		/** {@link Solution#farthestInsertion(int)}, from each vertex in turn. */
+		FARTHEST,
+		/** {@link Solution#doubleTree()}. */
+		DOUBLE_TREE,
+		/** {@link Solution#christofides()}. */
+		CHRISTOFIDES,
+		/** {@link Solution#savings()}. */
+		SAVINGS
+	}
+
 	// ---------------------------------------------
 	// --------------- ATTRIBUTES ------------------
 	// ---------------------------------------------
@@ -57,6 +89,21 @@ public class TSPSolver {
 	/** Time given to solve the problem. */
 	private long m_time;
 
+	/** Construction of the starting tours. */
+	private Start m_start = Start.NEAREST;
+
+	/** Number of threads of the multi-start. */
+	private int m_threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Acceptance criterion of the iterated local search, null to use the
+	 * multi-start instead.
+	 */
+	private Solution.Acceptance m_acceptance = null;
+
+	/** Choice of the cut vertices of the kicks of the iterated local search. */
+	private Solution.Kick m_kick = Solution.Kick.LOCAL;
+
 	// --------------------------------------------
 	// ------------ GETTERS AND SETTERS -----------
 	// --------------------------------------------
@@ -79,6 +126,29 @@ public class TSPSolver {
 		return m_time;
 	}
 
+	/** @return the construction of the starting tours */
+	public Start getStart() {
+		return m_start;
+	}
+
+	/** @return the number of threads of the multi-start */
+	public int getThreads() {
+		return m_threads;
+	}
+
+	/**
+	 * @return the acceptance criterion of the iterated local search, null if
+	 *         it is not used
+	 */
+	public Solution.Acceptance getAcceptance() {
+		return m_acceptance;
+	}
+
+	/** @return the choice of the cut vertices of the kicks */
+	public Solution.Kick getKick() {
+		return m_kick;
+	}
+
 	/**
 	 * Initializes the problem solution with a new Solution object (the old one
 	 * will be deleted).
@@ -110,6 +180,53 @@ public class TSPSolver {
 		this.m_time = time;
 	}
 
+	/**
+	 * Sets the construction of the starting tours ({@link Start#NEAREST} by
+	 * default).
+	 * 
+	 * @param start
+	 *            : construction used by {@link #construct(int)}
+	 */
+	public void setStart(Start start) {
+		this.m_start = start;
+	}
+
+	/**
+	 * Sets the number of threads of the multi-start (the number of processors
+	 * by default).
+	 * 
+	 * @param threads
+	 *            : number of worker threads, at least 1
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Invalid number of threads: "
+					+ threads);
+		this.m_threads = threads;
+	}
+
+	/**
+	 * Replaces the multi-start of the large instances by an iterated local
+	 * search, see {@link #rechercheLocaleIteree()}.
+	 * 
+	 * @param acceptance
+	 *            : acceptance criterion, null for the multi-start (default)
+	 */
+	public void setAcceptance(Solution.Acceptance acceptance) {
+		this.m_acceptance = acceptance;
+	}
+
+	/**
+	 * Sets the choice of the cut vertices of the kicks of the iterated local
+	 * search ({@link Solution.Kick#LOCAL} by default).
+	 * 
+	 * @param kick
+	 *            : choice of the cut vertices
+	 */
+	public void setKick(Solution.Kick kick) {
+		this.m_kick = kick;
+	}
+
 	// --------------------------------------
 	// -------------- METHODS ---------------
 	// --------------------------------------
@@ -263,37 +380,145 @@ public class TSPSolver {
     		return best;
     	}
     	
-    	public Solution meilleuresolutionGrosseInstance2(boolean b) throws Exception {   		
-    		m_solution.plusprochevoisin(0);	
-    		if (b) { m_solution.VND(); } else { }    		
-    		double pluspetit = m_solution.evaluate();
-    		Solution soluce = m_solution.copy();
-    		long t = System.currentTimeMillis();
-         	long tempspasse=0;
-         	m_solution.plusprochevoisin(1);	
-    		if (b) { m_solution.VND(); } else {  }
-    		double minoupas = m_solution.evaluate();
-         	tempspasse=System.currentTimeMillis()-t;
-         	if (minoupas<pluspetit) {
-				soluce = m_solution.copy();
-				pluspetit=minoupas;
-			}
-        	
-         	long test = 0;
-    		int i=2;
-    		while(test<((m_time-10)*1000-tempspasse) && i<m_instance.getNbVertices()) {
-        			m_solution.plusprochevoisin(i);	
-            		if (b) { m_solution.VND(); } else {  }
-        			minoupas = m_solution.evaluate();
-        			if (minoupas<pluspetit) {
-        				soluce = m_solution.copy();
-        				pluspetit=minoupas;
-        			}
-        			i++;
-        			test=System.currentTimeMillis() - t;
-        	}	
-    		//System.err.println("iterations: "+i);
-      		return soluce;
+    	/**
+    	 * Builds the i-th starting tour of a multi-start in m_solution, with the
+    	 * construction {@link #getStart()}. The constructions that depend on a
+    	 * start vertex start from vertex i. The others give the same tour for
+    	 * every i, so they only build the first one, and the next ones are
+    	 * nearest neighbor tours from vertex i.
+    	 */
+    	public void construct(int i) throws Exception {
+    		construct(m_solution, i);
+    	}
+
+    	/** Builds the i-th starting tour of a multi-start in sol. */
+    	private void construct(Solution sol, int i) throws Exception {
+    		switch (m_start) {
+    		case GREEDY:
+    			if (i == 0) { sol.greedyEdge(); } else { sol.plusprochevoisin(i); }
+    			break;
+    		case CURVE:
+    			if (i == 0) { sol.spaceFillingCurve(); } else { sol.plusprochevoisin(i); }
+    			break;
+    		case DOUBLE_TREE:
+    			if (i == 0) { sol.doubleTree(); } else { sol.plusprochevoisin(i); }
+    			break;
+    		case CHRISTOFIDES:
+    			if (i == 0) { sol.christofides(); } else { sol.plusprochevoisin(i); }
+    			break;
+    		case SAVINGS:
+    			if (i == 0) { sol.savings(); } else { sol.plusprochevoisin(i); }
+    			break;
+    		case CHEAPEST:
+    			sol.cheapestInsertion(i);
+    			break;
+    		case FARTHEST:
+    			sol.farthestInsertion(i);
+    			break;
+    		default:
+    			sol.plusprochevoisin(i);
+    		}
+    	}
+
+    	// depart construit par construct(i) depuis chaque ville de depart tant
+    	// qu'il reste du temps, suivi de la DVV si b, sinon de Lin-Kernighan.
+    	// Les departs sont repartis entre m_threads threads, chacun avec sa
+    	// Solution : un thread prend le prochain depart tant que la duree du
+    	// dernier depart termine tient avant la fin. Les departs 0 et 1 sont
+    	// toujours faits.
+    	public Solution meilleuresolutionGrosseInstance2(final boolean b) throws Exception {
+    		final long fin = System.currentTimeMillis() + (m_time - 10) * 1000;
+    		final int n = m_instance.getNbVertices();
+    		final AtomicInteger prochain = new AtomicInteger();
+    		final AtomicLong duree = new AtomicLong();
+    		final AtomicReference<Meilleure> meilleure = new AtomicReference<Meilleure>();
+    		int threads = Math.min(m_threads, n);
+    		ExecutorService pool = Executors.newFixedThreadPool(threads);
+    		try {
+    			List<Future<Void>> resultats = new ArrayList<Future<Void>>();
+    			for (int t = 0; t < threads; t++) {
+    				resultats.add(pool.submit(new Callable<Void>() {
+    					public Void call() throws Exception {
+    						Solution sol = new Solution(m_instance);
+    						int i;
+    						while (!Thread.interrupted()
+    								&& (i = prochain.getAndIncrement()) < n) {
+    							long debut = System.currentTimeMillis();
+    							if (i >= 2 && debut + duree.get() > fin)
+    								break;
+    							construct(sol, i);
+    							if (b) { sol.VND(); } else { sol.linKernighan(); }
+    							sol.evaluate();
+    							duree.set(System.currentTimeMillis() - debut);
+    							Meilleure.propose(meilleure, sol, i);
+    						}
+    						return null;
+    					}
+    				}));
+    			}
+    			for (Future<Void> resultat : resultats) {
+    				try {
+    					resultat.get();
+    				} catch (ExecutionException e) {
+    					if (e.getCause() instanceof Exception)
+    						throw (Exception) e.getCause();
+    					throw e;
+    				}
+    			}
+    		} finally {
+    			pool.shutdownNow();
+    		}
+    		//System.err.println("iterations: "+prochain.get());
+      		return meilleure.get().m_solution;
+    	}
+
+    	// depart construit par construct(0), puis recherche locale iteree
+    	// (Lin-Kernighan et kicks double-bridge) jusqu'a la meme fin que le
+    	// multi-start
+    	public Solution rechercheLocaleIteree() throws Exception {
+    		long fin = System.currentTimeMillis() + (m_time - 10) * 1000;
+    		construct(0);
+    		m_solution.evaluate();
+    		m_solution.iteratedLocalSearch(fin, m_kick, m_acceptance);
+    		return m_solution;
+    	}
+
+    	/**
+    	 * Best tour of the multi-start, shared by the threads without lock: it
+    	 * is replaced by compare-and-set. Among tours of the same length, the
+    	 * one of the smallest start is kept. Which starts are run depends on
+    	 * the time they take, so the result may change from one run to the
+    	 * next.
+    	 */
+    	private static final class Meilleure {
+    		final long m_objective;
+    		final int m_depart;
+    		final Solution m_solution;
+
+    		Meilleure(Solution sol, int depart) {
+    			m_objective = sol.getObjective();
+    			m_depart = depart;
+    			m_solution = sol.copy();
+    		}
+
+    		boolean estMeilleure(Meilleure autre) {
+    			return autre == null || m_objective < autre.m_objective
+    					|| (m_objective == autre.m_objective && m_depart < autre.m_depart);
+    		}
+
+    		/** Keeps sol in best if it is better, sol is copied. */
+    		static void propose(AtomicReference<Meilleure> best, Solution sol,
+    				int depart) {
+    			Meilleure courante = best.get();
+    			if (courante != null && courante.m_objective < sol.getObjective())
+    				return;
+    			Meilleure nouvelle = new Meilleure(sol, depart);
+    			while (nouvelle.estMeilleure(courante)) {
+    				if (best.compareAndSet(courante, nouvelle))
+    					return;
+    				courante = best.get();
+    			}
+    		}
     	}
 	
 		
@@ -310,23 +535,21 @@ public class TSPSolver {
 				this.setSolution(this.meilleuresolutionGenetique2(30, 15, 0.9,
 						0, 0, 0, 1));
 			} else {
-				if (this.m_instance.getNbVertices() < 400) {
+				if (m_acceptance != null && this.m_instance.getNbVertices() >= 400) {
+					this.setSolution(this.rechercheLocaleIteree());
+				}
+				else if (this.m_instance.getNbVertices() < 400) {
 					this.setSolution(this.meilleuresolutionGrosseInstance2(true));
 					m_solution.VNDet3opt();
 				}
 				else {
 					if (this.m_instance.getNbVertices() < 800) {
 						this.setSolution(this.meilleuresolutionGrosseInstance2(true));
-						m_solution.trois_opt();
+						m_solution.trois_optVoisins();
 						m_solution.VND();
 					}
 					else {
-						if (this.m_instance.getNbVertices() < 2200) {
-							this.setSolution(this.meilleuresolutionGrosseInstance2(true));
-						}
-						else {
-							this.setSolution(this.meilleuresolutionGrosseInstance2(false));
-						}
+						this.setSolution(this.meilleuresolutionGrosseInstance2(false));
 					}
 				}
 			}
@@ -0,0 +1,84 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+/**
+ * Cyclic tour over all the vertices, as used by the local searches that work
+ * with vertices rather than positions. <br>
+ * <br>
+ * A tour has an orientation: {@link #next(int)} and {@link #prev(int)} give
+ * the neighbors of a vertex along it. The only modification is
+ * {@link #flip(int, int, int, int)}, the 2-opt move, from which the Or-opt
+ * and 3-opt moves are built. A flip may reverse either of the two paths it
+ * separates, so the orientation of a vertex must be read again after each
+ * flip. <br>
+ * <br>
+ * Two implementations are available, see {@link Solution#createTour()}:
+ * {@link ArrayTour} reverses positions in an array, in O(n) per flip, and
+ * {@link TwoLevelTour} reverses blocks of about sqrt(n) vertices, in
+ * O(sqrt(n)) per flip. No argument is checked.
+ */
+public interface Tour {
+
+	/** @return the number of vertices. */
+	int size();
+
+	/** @return the vertex after v on the tour. */
+	int next(int v);
+
+	/** @return the vertex before v on the tour. */
+	int prev(int v);
+
+	/**
+	 * @return <code>true</code> if b is on the path that goes from a to c
+	 *         along the tour, a and c included.
+	 */
+	boolean between(int a, int b, int c);
+
+	/**
+	 * Replaces the edges (a,b) and (c,d) by (a,c) and (b,d), reversing either
+	 * the path from b to c or the path from d to a, whichever is cheaper.
+	 *
+	 * @param a
+	 *            any vertex.
+	 * @param b
+	 *            must be <code>next(a)</code>.
+	 * @param c
+	 *            any vertex.
+	 * @param d
+	 *            must be <code>next(c)</code>.
+	 */
+	void flip(int a, int b, int c, int d);
+
+	/**
+	 * Writes the tour in <code>route</code>, starting from vertex
+	 * <code>first</code>, with <code>route[size()] = first</code> as in
+	 * {@link Solution}.
+	 */
+	default void toArray(int first, int[] route) {
+		int v = first;
+		for (int i = 0; i < size(); i++) {
+			route[i] = v;
+			v = next(v);
+		}
+		route[size()] = first;
+	}
+
+}
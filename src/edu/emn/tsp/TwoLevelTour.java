@@ -0,0 +1,324 @@
+/*
+	tsp-framework
+	Copyright (C) 2012 Fabien Lehuédé / Damien Prot
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package edu.emn.tsp;
+
+/**
+ * {@link Tour} stored as a two-level list: the tour is a list of blocks, each
+ * block a range of the array {@link #m_city} read forward or backward
+ * according to its reversal bit. <br>
+ * <br>
+ * A flip whose path lies inside a block reverses the range of the block in
+ * place. Otherwise, the blocks of the two ends are split so that the path is
+ * made of whole blocks, and the order of these blocks in the list is reversed
+ * and their bits toggled. The side with the fewest blocks is reversed. A
+ * split only renumbers the vertices of the smaller part, and neither part is
+ * copied. <br>
+ * <br>
+ * The tour starts with blocks of about sqrt(n) vertices. Each flip adds at
+ * most two blocks: when there are three times as many as at the start, the
+ * array is rewritten in tour order and cut again, in O(n). A flip thus costs
+ * O(sqrt(n)) amortized, and {@link #next(int)}, {@link #prev(int)} and
+ * {@link #between(int, int, int)} run in constant time.
+ */
+class TwoLevelTour implements Tour {
+
+	/** Number of vertices. */
+	private final int m_n;
+
+	/** Vertices, each block covers a range of this array. */
+	private int[] m_city;
+
+	/** Array used to rewrite m_city. */
+	private int[] m_spare;
+
+	/** Index of each vertex in m_city. */
+	private final int[] m_index;
+
+	/** Block of each vertex. */
+	private final int[] m_block;
+
+	/** First index in m_city of each block. */
+	private final int[] m_start;
+
+	/** Index in m_city after the last vertex of each block. */
+	private final int[] m_end;
+
+	/** If true, the block is read from m_end-1 down to m_start. */
+	private final boolean[] m_reversed;
+
+	/** Position of each block in m_list. */
+	private final int[] m_rank;
+
+	/** Blocks in tour order. */
+	private final int[] m_list;
+
+	/** Number of blocks. */
+	private int m_nbBlocks;
+
+	/** Number of vertices per block when the array is cut. */
+	private final int m_blockSize;
+
+	/**
+	 * @param route
+	 *            vertices in tour order (only the first n are read).
+	 * @param n
+	 *            number of vertices.
+	 */
+	TwoLevelTour(int[] route, int n) {
+		m_n = n;
+		m_city = new int[n];
+		m_spare = new int[n];
+		m_index = new int[n];
+		m_block = new int[n];
+		m_blockSize = Math.max(1, (int) Math.sqrt(n));
+		int capacity = 3 * ((n + m_blockSize - 1) / m_blockSize) + 2;
+		m_start = new int[capacity];
+		m_end = new int[capacity];
+		m_reversed = new boolean[capacity];
+		m_rank = new int[capacity];
+		m_list = new int[capacity];
+		System.arraycopy(route, 0, m_spare, 0, n);
+		cut();
+	}
+
+	/** Cuts m_spare, which holds the tour in order, into new blocks. */
+	private void cut() {
+		int[] tmp = m_city;
+		m_city = m_spare;
+		m_spare = tmp;
+		m_nbBlocks = 0;
+		for (int s = 0; s < m_n; s += m_blockSize) {
+			int b = m_nbBlocks++;
+			m_start[b] = s;
+			m_end[b] = Math.min(m_n, s + m_blockSize);
+			m_reversed[b] = false;
+			m_rank[b] = b;
+			m_list[b] = b;
+			for (int i = s; i < m_end[b]; i++) {
+				m_index[m_city[i]] = i;
+				m_block[m_city[i]] = b;
+			}
+		}
+	}
+
+	/** Rewrites the array in tour order and cuts it again. */
+	private void rebuild() {
+		int v = first(m_list[0]);
+		for (int i = 0; i < m_n; i++) {
+			m_spare[i] = v;
+			v = next(v);
+		}
+		cut();
+	}
+
+	@Override
+	public int size() {
+		return m_n;
+	}
+
+	/** @return the first vertex of block b along the tour. */
+	private int first(int b) {
+		return m_reversed[b] ? m_city[m_end[b] - 1] : m_city[m_start[b]];
+	}
+
+	/** @return the last vertex of block b along the tour. */
+	private int last(int b) {
+		return m_reversed[b] ? m_city[m_start[b]] : m_city[m_end[b] - 1];
+	}
+
+	@Override
+	public int next(int v) {
+		int b = m_block[v];
+		int i = m_index[v];
+		if (m_reversed[b]) {
+			if (i > m_start[b])
+				return m_city[i - 1];
+		} else {
+			if (i + 1 < m_end[b])
+				return m_city[i + 1];
+		}
+		int r = m_rank[b] + 1;
+		return first(m_list[r == m_nbBlocks ? 0 : r]);
+	}
+
+	@Override
+	public int prev(int v) {
+		int b = m_block[v];
+		int i = m_index[v];
+		if (m_reversed[b]) {
+			if (i + 1 < m_end[b])
+				return m_city[i + 1];
+		} else {
+			if (i > m_start[b])
+				return m_city[i - 1];
+		}
+		int r = m_rank[b];
+		return last(m_list[r == 0 ? m_nbBlocks - 1 : r - 1]);
+	}
+
+	/** @return the rank of v along its block. */
+	private int offset(int v) {
+		int b = m_block[v];
+		return m_reversed[b] ? m_end[b] - 1 - m_index[v] : m_index[v]
+				- m_start[b];
+	}
+
+	/** @return a number that increases along the tour, from block 0. */
+	private long sequence(int v) {
+		return ((long) m_rank[m_block[v]] << 32) | offset(v);
+	}
+
+	@Override
+	public boolean between(int a, int b, int c) {
+		long sa = sequence(a), sb = sequence(b), sc = sequence(c);
+		if (sa <= sc)
+			return sa <= sb && sb <= sc;
+		return sb >= sa || sb <= sc;
+	}
+
+	@Override
+	public void flip(int a, int b, int c, int d) {
+		if (inBlock(b, c)) {
+			reverseInBlock(b, c);
+			return;
+		}
+		if (inBlock(d, a)) {
+			reverseInBlock(d, a);
+			return;
+		}
+		if (m_nbBlocks + 2 > m_list.length)
+			rebuild();
+
+		int blocks = m_rank[m_block[c]] - m_rank[m_block[b]];
+		if (blocks < 0)
+			blocks += m_nbBlocks;
+		if (2 * (blocks + 1) > m_nbBlocks) {
+			// The path from d to a spans fewer blocks
+			int tmp = b;
+			b = d;
+			d = tmp;
+			tmp = a;
+			a = c;
+			c = tmp;
+		}
+		splitBefore(b);
+		splitBefore(d);
+		int from = m_rank[m_block[b]];
+		int length = m_rank[m_block[d]] - from;
+		if (length <= 0)
+			length += m_nbBlocks;
+		reverseBlocks(from, length);
+	}
+
+	/**
+	 * @return <code>true</code> if the path from u to v is inside the block of
+	 *         u.
+	 */
+	private boolean inBlock(int u, int v) {
+		int b = m_block[u];
+		if (m_block[v] != b)
+			return false;
+		return m_reversed[b] ? m_index[u] >= m_index[v]
+				: m_index[u] <= m_index[v];
+	}
+
+	/** Reverses the path from u to v, inside a block. */
+	private void reverseInBlock(int u, int v) {
+		int i = m_index[u], j = m_index[v];
+		if (i > j) {
+			int tmp = i;
+			i = j;
+			j = tmp;
+		}
+		for (; i < j; i++, j--) {
+			int x = m_city[i], y = m_city[j];
+			m_city[i] = y;
+			m_index[y] = i;
+			m_city[j] = x;
+			m_index[x] = j;
+		}
+	}
+
+	/**
+	 * Splits the block of v so that v is the first vertex of its block along
+	 * the tour. The part that has fewer vertices gets a new block number.
+	 */
+	private void splitBefore(int v) {
+		int b = m_block[v];
+		int i = m_index[v];
+		// The range of m_city is cut at index k: [start,k) and [k,end)
+		int k = m_reversed[b] ? i + 1 : i;
+		if (k == m_start[b] || k == m_end[b])
+			return;
+		int nb = m_nbBlocks++;
+		m_reversed[nb] = m_reversed[b];
+		boolean lowFirst = !m_reversed[b];
+		// The new block holds the smaller part
+		boolean newLow = k - m_start[b] < m_end[b] - k;
+		if (newLow) {
+			m_start[nb] = m_start[b];
+			m_end[nb] = k;
+			m_start[b] = k;
+		} else {
+			m_start[nb] = k;
+			m_end[nb] = m_end[b];
+			m_end[b] = k;
+		}
+		for (int p = m_start[nb]; p < m_end[nb]; p++) {
+			m_block[m_city[p]] = nb;
+		}
+		// The new block comes after b when it holds the part that comes
+		// later along the tour
+		int r = m_rank[b];
+		if (newLow != lowFirst)
+			r++;
+		System.arraycopy(m_list, r, m_list, r + 1, m_nbBlocks - 1 - r);
+		m_list[r] = nb;
+		for (int p = r; p < m_nbBlocks; p++) {
+			m_rank[m_list[p]] = p;
+		}
+	}
+
+	/**
+	 * Reverses the order of the <code>length</code> blocks of m_list from rank
+	 * <code>from</code>, cyclically, and toggles their bits.
+	 */
+	private void reverseBlocks(int from, int length) {
+		int i = from, j = from + length - 1;
+		if (j >= m_nbBlocks)
+			j -= m_nbBlocks;
+		for (int k = 0; k < length; k++) {
+			int b = m_list[i + k < m_nbBlocks ? i + k : i + k - m_nbBlocks];
+			m_reversed[b] = !m_reversed[b];
+		}
+		for (int k = length / 2; k > 0; k--) {
+			int x = m_list[i], y = m_list[j];
+			m_list[i] = y;
+			m_rank[y] = i;
+			m_list[j] = x;
+			m_rank[x] = j;
+			if (++i == m_nbBlocks)
+				i = 0;
+			if (--j < 0)
+				j = m_nbBlocks - 1;
+		}
+	}
+
+}